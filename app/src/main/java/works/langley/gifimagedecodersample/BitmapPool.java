@@ -0,0 +1,110 @@
+package works.langley.gifimagedecodersample;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of mutable bitmaps reused for frame compositing, keyed by width, height and config.
+ * Bitmaps put back while the pool is full evict the oldest ones, which are recycled.
+ */
+public class BitmapPool {
+    private static final String TAG = BitmapPool.class.getSimpleName();
+
+    private static final int DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+    private static BitmapPool sDefault;
+
+    private final ArrayList<Bitmap> mBitmaps = new ArrayList<Bitmap>();
+    private int mMaxSize;
+    private int mSize;
+
+    /**
+     * @param maxSize maximum number of bytes held by the pool
+     */
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Gets the pool shared by decoders that were not given one.
+     *
+     * @return default pool
+     */
+    public static synchronized BitmapPool getDefault() {
+        if (sDefault == null) {
+            sDefault = new BitmapPool(DEFAULT_MAX_SIZE);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Gets a bitmap from the pool, or creates one if none matches.
+     * The contents of a pooled bitmap are undefined.
+     *
+     * @param width  width of the bitmap
+     * @param height height of the bitmap
+     * @param config config of the bitmap
+     * @return mutable bitmap
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        synchronized (this) {
+            for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+                Bitmap bitmap = mBitmaps.get(i);
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                    mBitmaps.remove(i);
+                    mSize -= bitmap.getByteCount();
+                    return bitmap;
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Puts a bitmap back into the pool. The caller must not use it afterwards.
+     *
+     * @param bitmap bitmap, ignored if null, recycled or immutable
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || mBitmaps.contains(bitmap)) {
+            return;
+        }
+        int size = bitmap.getByteCount();
+        if (size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+        while (mSize + size > mMaxSize) {
+            Bitmap oldest = mBitmaps.remove(0);
+            mSize -= oldest.getByteCount();
+            oldest.recycle();
+        }
+        mBitmaps.add(bitmap);
+        mSize += size;
+    }
+
+    /**
+     * Recycles every pooled bitmap.
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : mBitmaps) {
+            bitmap.recycle();
+        }
+        mBitmaps.clear();
+        mSize = 0;
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        while (mSize > mMaxSize) {
+            Bitmap oldest = mBitmaps.remove(0);
+            mSize -= oldest.getByteCount();
+            oldest.recycle();
+        }
+    }
+
+    public synchronized int getSize() {
+        return mSize;
+    }
+}
@@ -0,0 +1,89 @@
+package works.langley.gifimagedecodersample;
+
+import android.graphics.Bitmap;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Turns the frames of a {@link GifDecoder} into bitmaps: the Android side of the decoder,
+ * which itself only works on pixel buffers.
+ */
+public class GifBitmapAdapter {
+    private static final String TAG = GifBitmapAdapter.class.getSimpleName();
+
+    private final GifDecoder mDecoder;
+    private BitmapPool mBitmapPool = BitmapPool.getDefault();
+    private short[] mRgb565Pixels; // frame being copied into an RGB_565 bitmap
+    private ShortBuffer mRgb565Buffer;
+
+    /**
+     * @param decoder decoder of the frames
+     */
+    public GifBitmapAdapter(GifDecoder decoder) {
+        mDecoder = decoder;
+    }
+
+    /**
+     * Sets the pool bitmaps are taken from.
+     * Defaults to {@link BitmapPool#getDefault()}.
+     *
+     * @param bitmapPool pool
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * Gets the image contents of frame n in a bitmap from the pool, the size of the decoded frames.
+     *
+     * @param n      index of frame
+     * @param config config of the bitmap
+     * @return bitmap, or null if frame n cannot be retrieved
+     */
+    public Bitmap getFrame(int n, Bitmap.Config config) {
+        int[] pixels = mDecoder.getFramePixels(n);
+        if (pixels == null) {
+            return null;
+        }
+        int width = mDecoder.getImageWidth();
+        int height = mDecoder.getImageHeight();
+        mDecoder.getMetrics().onBytesAllocated(mDecoder, width * height * (config == Bitmap.Config.ARGB_8888 ? 4 : 2));
+        Bitmap bitmap = mBitmapPool.get(width, height, config);
+        copyPixels(pixels, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Copies the image contents of frame n into a bitmap, e.g. one reused for every frame.
+     *
+     * @param n      index of frame
+     * @param bitmap mutable bitmap, the size of the decoded frames
+     * @return false if frame n cannot be retrieved
+     */
+    public boolean getFrame(int n, Bitmap bitmap) {
+        int[] pixels = mDecoder.getFramePixels(n);
+        if (pixels == null) {
+            return false;
+        }
+        copyPixels(pixels, bitmap);
+        return true;
+    }
+
+    private void copyPixels(int[] pixels, Bitmap bitmap) {
+        int width = mDecoder.getImageWidth();
+        int height = mDecoder.getImageHeight();
+        if (bitmap.getConfig() == Bitmap.Config.RGB_565) {
+            // packed beforehand, the bitmap only takes a copy
+            if (mRgb565Pixels == null || mRgb565Pixels.length != width * height) {
+                mRgb565Pixels = new short[width * height];
+                mRgb565Buffer = ShortBuffer.wrap(mRgb565Pixels);
+                mDecoder.getMetrics().onBytesAllocated(mDecoder, width * height * 2);
+            }
+            GifCompositor.packRgb565(pixels, mRgb565Pixels, mRgb565Pixels.length);
+            mRgb565Buffer.rewind();
+            bitmap.copyPixelsFromBuffer(mRgb565Buffer);
+        } else {
+            bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package works.langley.gifimagedecodersample;
+
+import android.util.LruCache;
+
+/**
+ * Process-wide cache of decoded gifs, so a gif shown again (another list row, or a row
+ * scrolled back into view) does not have to be decoded from scratch.
+ * Entries are evicted in LRU order once the bitmap bytes they hold exceed the maximum size.
+ * <p/>
+ * Cached decoders are shared: their frames must not be recycled by the views drawing them.
+ * Only decoders holding every frame are cached, not those with a frame window, which return
+ * the bitmaps of the frames outside their window to the bitmap pool while another view could
+ * still be drawing them.
+ */
+public class GifCache {
+    private static final String TAG = GifCache.class.getSimpleName();
+
+    private static GifCache sInstance;
+
+    private final LruCache<String, GifImageDecoder> mCache;
+
+    /**
+     * @param maxSize maximum number of bitmap bytes held by the cache
+     */
+    public GifCache(int maxSize) {
+        mCache = new LruCache<String, GifImageDecoder>(maxSize) {
+            @Override
+            protected int sizeOf(String key, GifImageDecoder decoder) {
+                return decoder.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Gets the cache shared by every {@link GifImageView}, sized to an eighth of the heap.
+     *
+     * @return shared cache
+     */
+    public static synchronized GifCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new GifCache((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8));
+        }
+        return sInstance;
+    }
+
+    public static String keyForFile(String filePath) {
+        return "file:" + filePath;
+    }
+
+    public static String keyForResource(int resId) {
+        return "res:" + resId;
+    }
+
+    /**
+     * Gets the key of a gif decoded with subsampled frames, kept apart from the full size one.
+     *
+     * @param key        key of the gif
+     * @param sampleSize subsampling factor of the decoder
+     * @return key
+     */
+    public static String keyForSampleSize(String key, int sampleSize) {
+        return sampleSize > 1 ? key + "#" + sampleSize : key;
+    }
+
+    /**
+     * @param key key of the gif
+     * @return decoded gif, or null if not cached
+     */
+    public GifImageDecoder get(String key) {
+        GifImageDecoder decoder = mCache.get(key);
+        GifMetrics.getDefault().onCacheLookup(key, decoder != null);
+        return decoder;
+    }
+
+    /**
+     * Caches a gif that has been read, unless its decoder has a frame window.
+     *
+     * @param key     key of the gif
+     * @param decoder decoder the gif was read with
+     * @see GifImageDecoder#hasFrameWindow()
+     */
+    public void put(String key, GifImageDecoder decoder) {
+        if (decoder.hasFrameWindow()) {
+            return;
+        }
+        mCache.put(key, decoder);
+    }
+
+    public void remove(String key) {
+        mCache.remove(key);
+    }
+
+    public void evictAll() {
+        mCache.evictAll();
+    }
+
+    public int getSize() {
+        return mCache.size();
+    }
+
+    public int getMaxSize() {
+        return mCache.maxSize();
+    }
+
+    public int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    public int getMissCount() {
+        return mCache.missCount();
+    }
+
+    public int getEvictionCount() {
+        return mCache.evictionCount();
+    }
+}
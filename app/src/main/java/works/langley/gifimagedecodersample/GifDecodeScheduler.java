@@ -0,0 +1,316 @@
+package works.langley.gifimagedecodersample;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared scheduler running gif decodes on a bounded pool of background threads.
+ * <p/>
+ * Requests for visible views run first, then the most recently requested ones.
+ * Requests with the same key share a single decode, which is cancelled once
+ * every request waiting for it has been cancelled. The key must therefore identify
+ * both the gif and every option its source configures the decoder with.
+ */
+public class GifDecodeScheduler {
+    private static final String TAG = GifDecodeScheduler.class.getSimpleName();
+
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private static GifDecodeScheduler sInstance;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final HashMap<String, DecodeTask> mInFlightTasks = new HashMap<String, DecodeTask>();
+    private long mSequence = 0;
+
+    /**
+     * Source of a gif, read on a worker thread.
+     */
+    public interface Source {
+        /**
+         * Reads the gif with the given decoder, configuring it first if needed.
+         * The decoder listeners are set by the scheduler to notify every {@link ProgressCallback}
+         * sharing the decode, sources only set options; removing the preview listener skips previews.
+         *
+         * @param decoder new decoder
+         * @return read status code
+         */
+        int read(GifImageDecoder decoder) throws IOException;
+
+        /**
+         * Releases the source instead of reading it, when its request joins a decode of the same gif
+         * already submitted. Called on the submitting thread.
+         */
+        void close();
+    }
+
+    /**
+     * Callback of a decode request, called on a worker thread unless the request was cancelled.
+     * The request is finished once its callback is called, cancelling it then does nothing.
+     */
+    public interface Callback {
+        void onDecoded(GifImageDecoder decoder, int status);
+    }
+
+    /**
+     * Callback also notified while the gif is read, on the worker thread, unless the request was cancelled.
+     * A request joining a decode in progress is first notified of the last frame decoded so far, on the
+     * submitting thread.
+     */
+    public interface ProgressCallback extends Callback {
+        /**
+         * @see GifImageDecoder.OnFrameDecodedListener#onFrameDecoded(GifImageDecoder, int)
+         */
+        void onFrameDecoded(GifImageDecoder decoder, int index);
+
+        /**
+         * @see GifImageDecoder.OnPreviewListener#onPreview(GifImageDecoder, Bitmap, int)
+         */
+        void onPreview(GifImageDecoder decoder, Bitmap preview, int passes);
+    }
+
+    /**
+     * Handle of a submitted decode.
+     */
+    public class Request {
+        private final Callback mCallback;
+        private DecodeTask mTask;
+        private boolean mCancelled = false;
+
+        private Request(Callback callback) {
+            mCallback = callback;
+        }
+
+        /**
+         * Cancels the request. Its callback will not be called.
+         * Does nothing once the decode is done: the decoder it read stays usable.
+         */
+        public void cancel() {
+            synchronized (GifDecodeScheduler.this) {
+                if (mCancelled || mTask.mFinished) {
+                    return;
+                }
+                mCancelled = true;
+                mTask.mRequests.remove(this);
+                if (mTask.mRequests.isEmpty()) {
+                    cancelTask(mTask);
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            synchronized (GifDecodeScheduler.this) {
+                return mCancelled;
+            }
+        }
+    }
+
+    private class DecodeTask implements Runnable, Comparable<DecodeTask>,
+            GifImageDecoder.OnFrameDecodedListener, GifImageDecoder.OnPreviewListener {
+        private final String mKey;
+        private final Source mSource;
+        private final GifImageDecoder mDecoder = new GifImageDecoder();
+        private final ArrayList<Request> mRequests = new ArrayList<Request>();
+        private boolean mVisible;
+        private long mSequence;
+        private boolean mRunning = false;
+        private boolean mFinished = false; // read, the requests are being called back
+
+        private DecodeTask(String key, Source source) {
+            mKey = key;
+            mSource = source;
+        }
+
+        @Override
+        public void run() {
+            synchronized (GifDecodeScheduler.this) {
+                if (mRequests.isEmpty()) {
+                    return;
+                }
+                mRunning = true;
+            }
+            mDecoder.setOnFrameDecodedListener(this);
+            mDecoder.setOnPreviewListener(this);
+            int status;
+            try {
+                status = mSource.read(mDecoder);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read gif", e);
+                status = GifImageDecoder.STATUS_OPEN_ERROR;
+            }
+            ArrayList<Request> requests;
+            synchronized (GifDecodeScheduler.this) {
+                if (mKey != null && mInFlightTasks.get(mKey) == this) {
+                    mInFlightTasks.remove(mKey);
+                }
+                mRunning = false;
+                mFinished = true;
+                requests = new ArrayList<Request>(mRequests);
+                mRequests.clear();
+            }
+            for (Request request : requests) {
+                request.mCallback.onDecoded(mDecoder, status);
+            }
+        }
+
+        @Override
+        public void onFrameDecoded(GifImageDecoder decoder, int index) {
+            for (ProgressCallback callback : getProgressCallbacks()) {
+                callback.onFrameDecoded(decoder, index);
+            }
+        }
+
+        @Override
+        public void onPreview(GifImageDecoder decoder, Bitmap preview, int passes) {
+            for (ProgressCallback callback : getProgressCallbacks()) {
+                callback.onPreview(decoder, preview, passes);
+            }
+        }
+
+        /**
+         * Gets the callbacks of the requests waiting for the decode that follow its progress.
+         */
+        private ArrayList<ProgressCallback> getProgressCallbacks() {
+            ArrayList<ProgressCallback> callbacks = new ArrayList<ProgressCallback>();
+            synchronized (GifDecodeScheduler.this) {
+                for (Request request : mRequests) {
+                    if (request.mCallback instanceof ProgressCallback) {
+                        callbacks.add((ProgressCallback) request.mCallback);
+                    }
+                }
+            }
+            return callbacks;
+        }
+
+        @Override
+        public int compareTo(DecodeTask another) {
+            if (mVisible != another.mVisible) {
+                return mVisible ? -1 : 1;
+            }
+            // most recent first
+            return mSequence > another.mSequence ? -1 : (mSequence < another.mSequence ? 1 : 0);
+        }
+    }
+
+    /**
+     * @param poolSize maximum number of gifs decoded at the same time
+     */
+    public GifDecodeScheduler(int poolSize) {
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG + " #" + mCount.getAndIncrement());
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets the scheduler shared by every {@link GifImageView}, sized to the number of cores minus one.
+     *
+     * @return shared scheduler
+     */
+    public static synchronized GifDecodeScheduler getInstance() {
+        if (sInstance == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            sInstance = new GifDecodeScheduler(Math.max(1, Math.min(4, cores - 1)));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets the maximum number of gifs decoded at the same time.
+     *
+     * @param poolSize number of threads, at least 1
+     */
+    public void setPoolSize(int poolSize) {
+        poolSize = Math.max(1, poolSize);
+        if (poolSize > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(poolSize);
+            mExecutor.setCorePoolSize(poolSize);
+        } else {
+            mExecutor.setCorePoolSize(poolSize);
+            mExecutor.setMaximumPoolSize(poolSize);
+        }
+    }
+
+    public int getPoolSize() {
+        return mExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * Submits a decode. If a decode with the same key is already queued or running,
+     * the request joins it instead, its source is closed and the queued decode is moved to the front.
+     *
+     * @param key      key of the gif and of the options of the source, or null to never share the decode
+     * @param source   source of the gif
+     * @param callback callback notified when the gif has been read
+     * @param visible  whether the gif is currently visible
+     * @return request handle, used to cancel the request
+     */
+    public Request submit(String key, Source source, Callback callback, boolean visible) {
+        Request request = new Request(callback);
+        DecodeTask task;
+        synchronized (this) {
+            task = key != null ? mInFlightTasks.get(key) : null;
+            if (task == null) {
+                task = new DecodeTask(key, source);
+                task.mVisible = visible;
+                task.mSequence = ++mSequence;
+                request.mTask = task;
+                task.mRequests.add(request);
+                if (key != null) {
+                    mInFlightTasks.put(key, task);
+                }
+                mExecutor.execute(task);
+                return request;
+            }
+            request.mTask = task;
+            task.mRequests.add(request);
+            if (!task.mRunning && mExecutor.remove(task)) {
+                // requeue with the new priority
+                task.mVisible |= visible;
+                task.mSequence = ++mSequence;
+                mExecutor.execute(task);
+            }
+        }
+
+        // the decode reads the source of the request that submitted it
+        source.close();
+        // catch up with the frames decoded before joining, the next ones are notified as they come
+        int frameCount = task.mDecoder.getFrameCount();
+        if (frameCount > 0 && callback instanceof ProgressCallback && !request.isCancelled()) {
+            ((ProgressCallback) callback).onFrameDecoded(task.mDecoder, frameCount - 1);
+        }
+        return request;
+    }
+
+    private void cancelTask(DecodeTask task) {
+        if (task.mKey != null && mInFlightTasks.get(task.mKey) == task) {
+            mInFlightTasks.remove(task.mKey);
+        }
+        if (task.mRunning) {
+            task.mDecoder.cancel();
+        } else {
+            mExecutor.remove(task);
+        }
+    }
+}
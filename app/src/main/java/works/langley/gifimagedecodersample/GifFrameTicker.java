@@ -0,0 +1,139 @@
+package works.langley.gifimagedecodersample;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single ticker shared by every playing {@link GifImageView}, notifying each view only
+ * when its next frame is due instead of redrawing it on every display refresh.
+ * <p/>
+ * The ticker sleeps until the earliest due frame, then fires on the following vsync
+ * (or after a plain delay before Jelly Bean). It must be used from the main thread.
+ */
+public class GifFrameTicker {
+    private static final String TAG = GifFrameTicker.class.getSimpleName();
+
+    private static GifFrameTicker sInstance;
+
+    private final HashMap<Callback, Long> mFrameTimes = new HashMap<Callback, Long>(); // uptime each callback is due
+    private final ArrayList<Callback> mDueCallbacks = new ArrayList<Callback>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+    private VsyncCallback mVsyncCallback;
+    private long mTickTime = Long.MAX_VALUE; // uptime of the pending tick, if any
+
+    /**
+     * Callback notified on the main thread when a frame is due.
+     */
+    public interface Callback {
+        void onFrameDue();
+    }
+
+    private GifFrameTicker() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mVsyncCallback = new VsyncCallback(mTick);
+        }
+    }
+
+    public static synchronized GifFrameTicker getInstance() {
+        if (sInstance == null) {
+            sInstance = new GifFrameTicker();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Notifies a callback once the next frame is due. Replaces any frame already scheduled for the callback.
+     *
+     * @param callback    callback, typically invalidating a view
+     * @param delayMillis time until the frame is due, 0 for the next vsync
+     */
+    public void scheduleFrame(Callback callback, long delayMillis) {
+        long frameTime = SystemClock.uptimeMillis() + Math.max(0, delayMillis);
+        mFrameTimes.put(callback, frameTime);
+        if (frameTime < mTickTime) {
+            scheduleTick(frameTime);
+        }
+    }
+
+    /**
+     * Cancels the frame scheduled for a callback, if any.
+     *
+     * @param callback callback
+     */
+    public void cancel(Callback callback) {
+        mFrameTimes.remove(callback);
+    }
+
+    private void tick() {
+        mTickTime = Long.MAX_VALUE;
+        long now = SystemClock.uptimeMillis();
+        long nextFrameTime = Long.MAX_VALUE;
+        for (Map.Entry<Callback, Long> entry : mFrameTimes.entrySet()) {
+            long frameTime = entry.getValue();
+            if (frameTime <= now) {
+                mDueCallbacks.add(entry.getKey());
+            } else if (frameTime < nextFrameTime) {
+                nextFrameTime = frameTime;
+            }
+        }
+        for (Callback callback : mDueCallbacks) {
+            mFrameTimes.remove(callback);
+        }
+        // callbacks may reschedule themselves
+        for (Callback callback : mDueCallbacks) {
+            callback.onFrameDue();
+        }
+        mDueCallbacks.clear();
+        if (nextFrameTime < mTickTime) {
+            scheduleTick(nextFrameTime);
+        }
+    }
+
+    private void scheduleTick(long tickTime) {
+        long delayMillis = Math.max(0, tickTime - SystemClock.uptimeMillis());
+        if (mVsyncCallback != null) {
+            mVsyncCallback.schedule(delayMillis);
+        } else {
+            mHandler.removeCallbacks(mTick);
+            mHandler.postDelayed(mTick, delayMillis);
+        }
+        mTickTime = tickTime;
+    }
+
+    /**
+     * Runs the tick on vsync, kept apart so it is only loaded on Jelly Bean and above.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class VsyncCallback implements Choreographer.FrameCallback {
+        private final Runnable mTick;
+
+        private VsyncCallback(Runnable tick) {
+            mTick = tick;
+        }
+
+        private void schedule(long delayMillis) {
+            Choreographer choreographer = Choreographer.getInstance();
+            choreographer.removeFrameCallback(this);
+            choreographer.postFrameCallbackDelayed(this, delayMillis);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mTick.run();
+        }
+    }
+}
@@ -1,94 +1,182 @@
 package works.langley.gifimagedecodersample;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import android.graphics.Rect;
+
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 
-public class GifImageDecoder {
+/**
+ * Decodes the frames of a GIF file into bitmaps. Parsing, decoding, compositing and frame timing
+ * are done by {@link GifDecoder}; this class keeps the frames as bitmaps, or as indices into the
+ * global color table, and in lazy mode decodes them on demand inside a window of frames.
+ */
+public class GifImageDecoder extends GifDecoder {
     private static final String TAG = GifImageDecoder.class.getSimpleName();
     private final GifImageDecoder self = this;
 
-    // File read status: No errors.
-    public static final int STATUS_OK = 0;
-    // File read status: Error decoding file (may be partially decoded)
-    public static final int STATUS_FORMAT_ERROR = 1;
-    // File read status: Unable to open source.
-    public static final int STATUS_OPEN_ERROR = 2;
-    // Trailer
-    private static final byte TRR_CODE = (byte) 0x3B;
-    // Image Block
-    private static final byte IMG_CODE = (byte) 0x2C;
-    // Extension
-    private static final byte EXT_CODE = (byte) 0x21;
-    // Graphic Control Extension
-    private static final byte GC_EXT = (byte) 0xF9;
-    // Application Extension
-    private static final byte APP_EXT = (byte) 0xFF;
-    // Comment Extension
-    private static final byte CMT_EXT = (byte) 0xFE;
-    // Plain Text Extension
-    private static final byte TXT_EXT = (byte) 0x01;
-
-    private static final int MIN_DELAY = 100;
-    private static final int MIN_DELAY_ENFORCE_THRESHOLD = 20;
-
-    protected int mStatus;
-    protected int mWidth; // full mCurrentImage mWidth
-    protected int mHeight; // full mCurrentImage mHeight
-    protected Bitmap mCurrentImage; // current frame
-    protected Bitmap mLastImage; // previous frame
-    protected int mDispose = 0; // 0=no action; 1=leave in place; 2=restore to bg; 3=restore to prev
-    protected int mLastDispose = 0;
-    protected int mDelay = 0; // mDelay in milliseconds
-    protected ArrayList<GifFrame> mGifFrames; // mGifFrames read from current file
-    protected int mFrameCount;
-
-    private int mOffset = 0;
-
-    private GifHeader mGifHeader;
-    private GraphicControlExtension mGcExt;
-    private ImageBlock mImageBlock;
+    private static final int DEFAULT_FRAME_WINDOW_SIZE = 3;
+
+    private ArrayList<GifFrame> mGifFrames = new ArrayList<GifFrame>(); // mGifFrames read from current file
+
+    private boolean mLazyDecoding = false;
+    private int mFrameWindowSize = DEFAULT_FRAME_WINDOW_SIZE;
+    private Bitmap.Config mBitmapConfig; // null to pick one per frame
+    private boolean mIndexedFrames = false;
+    private int mStoredByteCount; // bytes held by the frames for good, outside the frame window
+    private int mBytesPerPixel = 2; // of the largest frame bitmap config
+    private int mFrameStoreBudget = 0;
+    private GifFrameStore mFrameStore; // lazy mode: frames composited once, to expand instead of decoding again
+    private final int[] mDirtyBounds = new int[4];
+
+    private OnFrameDecodedListener mOnFrameDecodedListener;
+    private OnPreviewListener mOnPreviewListener;
+
+    private BitmapPool mBitmapPool = BitmapPool.getDefault();
+    // copies the composited frames into bitmaps, on the thread reading the file, or on the one
+    // calling getFrame() in lazy mode
+    private final GifBitmapAdapter mBitmapAdapter = new GifBitmapAdapter(this);
+
+    private GifPalette mPalette; // indexed mode and frame store: colors of the global color table
+    // held while frames are decoded on demand or expanded, which share the canvas and the buffers below,
+    // rather than the decoder lock, so frames ready to be drawn can be got meanwhile
+    private final Object mDecodeLock = new Object();
+    // indexed frame being expanded into a bitmap, by getFrame() while the thread reading the file
+    // composites the next frames
+    private int[] mExpandedPixels;
+    private short[] mExpandedRgb565Pixels;
+    private ShortBuffer mExpandedRgb565Buffer;
+    private byte[] mStoredIndices; // indices of the frame being stored or expanded from the frame store
 
-    private static class GifFrame {
-        public GifFrame(Bitmap im, int del) {
-            image = im;
-            delay = del;
-        }
+    /**
+     * Listener notified as frames are decoded.
+     */
+    public interface OnFrameDecodedListener {
+        /**
+         * Called when a frame has been decoded.
+         *
+         * @param decoder decoder reading the file
+         * @param index   index of the frame
+         */
+        void onFrameDecoded(GifImageDecoder decoder, int index);
+    }
 
+    /**
+     * Listener notified with coarse previews of an interlaced first frame while it is read.
+     */
+    public interface OnPreviewListener {
+        /**
+         * Called when more interlace passes of the first frame have been read,
+         * before the frame itself is decoded.
+         *
+         * @param decoder decoder reading the file
+         * @param preview first frame so far, each row read repeated down to the next one; the size
+         *                of the decoded frames, owned by the listener
+         * @param passes  number of interlace passes read
+         */
+        void onPreview(GifImageDecoder decoder, Bitmap preview, int passes);
+    }
+
+    private static class GifFrame {
         public Bitmap image;
-        public int delay;
+        // composited frame as indices into the palette in indexed mode, expanded to a bitmap when shown
+        public byte[] indices;
+    }
+
+    public GifImageDecoder() {
+        setDecodeWhileReading(true);
     }
 
     /**
-     * Gets display duration for specified frame.
+     * Gets the number of bytes held by the frames once decoded: every frame, or the frame
+     * window in lazy mode, plus the canvas they are composited onto.
+     * The value does not change once the file has been read.
      *
-     * @param n int index of frame
-     * @return delay in milliseconds
+     * @return size in bytes
      */
-    public int getDelay(int n) {
-        mDelay = -1;
-        if ((n >= 0) && (n < mFrameCount)) {
-            mDelay = mGifFrames.get(n).delay;
-            if (mDelay < MIN_DELAY_ENFORCE_THRESHOLD) {
-                mDelay = MIN_DELAY;
-            }
-        }
-        return mDelay;
+    @Override
+    public int getByteCount() {
+        int frames = hasFrameWindow() ? Math.min(getFrameCount(), mFrameWindowSize) : 0;
+        int storeBudget = mFrameStore != null ? mFrameStore.getBudget() : 0;
+        return super.getByteCount() + mStoredByteCount + storeBudget
+                + frames * getImageWidth() * getImageHeight() * mBytesPerPixel;
+    }
+
+    /**
+     * Keeps the frames composited in lazy mode in a {@link GifFrameStore}, compressed,
+     * so the following loops expand them instead of decoding them again.
+     * Frames using colors outside the global color table are not stored.
+     * Ignored unless decoding lazily. Must be called before reading.
+     *
+     * @param budget maximum number of bytes of the stored frames, 0 to disable the store
+     */
+    public void setFrameStoreBudget(int budget) {
+        mFrameStoreBudget = Math.max(0, budget);
     }
+
     /**
-     * Gets the number of GifFrames read from file.
+     * Gets the store of the composited frames, e.g. for its compression ratio and expand time.
      *
-     * @return frame count
+     * @return frame store, or null unless decoding lazily with a frame store budget
      */
-    public int getFrameCount() {
-        return mFrameCount;
+    public GifFrameStore getFrameStore() {
+        return mFrameStore;
+    }
+
+    /**
+     * Sets the config of the frame bitmaps. By default frames are RGB_565, and ARGB_8888 from the
+     * first frame with transparent pixels once composited: a transparent first frame, or
+     * frames restored to the background. Transparent pixels are black in RGB_565.
+     * Must be called before reading.
+     *
+     * @param config config of every frame, or null to pick one per frame
+     */
+    public void setBitmapConfig(Bitmap.Config config) {
+        mBitmapConfig = config;
+    }
+
+    /**
+     * Enables indexed frames: composited frames are kept as 8-bit indices into the global
+     * color table, 2 to 4 times smaller than bitmaps, and only expanded to bitmaps for the frames
+     * in the window of the current one, like in lazy mode. Frames using colors outside the
+     * global color table, from local color tables, are kept as bitmaps.
+     * Ignored when decoding lazily. Must be called before reading.
+     * Gifs with indexed frames are not kept in {@link GifCache}, see {@link #hasFrameWindow()}.
+     *
+     * @param indexedFrames true to keep frames as indices
+     */
+    public void setIndexedFrames(boolean indexedFrames) {
+        mIndexedFrames = indexedFrames;
+    }
+
+    public boolean isIndexedFrames() {
+        return mIndexedFrames && !mLazyDecoding;
+    }
+
+    /**
+     * Whether only the frames in the window of the current one are kept as bitmaps, in lazy or
+     * indexed mode. The bitmaps of the other frames then go back to the bitmap pool as the frame
+     * shown changes, so the decoder must only be used by a single view.
+     */
+    public boolean hasFrameWindow() {
+        return mLazyDecoding || mIndexedFrames;
+    }
+
+    /**
+     * Gets the region of the canvas that can change when moving from one frame to another,
+     * see {@link #getDirtyBounds(int, int, int[])}.
+     *
+     * @param from    index of the frame shown
+     * @param to      index of the frame to show, reached by moving forward and looping
+     * @param outRect receives the region, in pixels of the gif
+     * @return false if either index is invalid
+     */
+    public synchronized boolean getDirtyRect(int from, int to, Rect outRect) {
+        if (!getDirtyBounds(from, to, mDirtyBounds)) {
+            return false;
+        }
+        outRect.set(mDirtyBounds[0], mDirtyBounds[1], mDirtyBounds[2], mDirtyBounds[3]);
+        return true;
     }
 
     /**
@@ -102,456 +190,340 @@ public class GifImageDecoder {
 
     /**
      * Gets the image contents of frame n.
+     * Can be called on any thread while the file is read, for the frames decoded so far: frames
+     * decoded on demand or expanded from indices only use their own state, not that of the read.
+     * Waits for the frame being decoded by {@link #prefetch(int)}, if any.
      *
      * @return BufferedBitmap representation of frame, or null if n is invalid.
      */
     public Bitmap getFrame(int n) {
-        if (mFrameCount <= 0)
+        int frameCount = getFrameCount();
+        if (frameCount <= 0)
             return null;
-        n = n % mFrameCount;
-        return (mGifFrames.get(n)).image;
+        n = n % frameCount;
+        if (!hasFrameWindow()) {
+            return getImage(n);
+        }
+        synchronized (mDecodeLock) {
+            Bitmap image = mLazyDecoding ? decodeUpTo(n, n) : expandFrame(n);
+            evictFrames(n);
+            return image;
+        }
     }
 
     /**
-     * Reads GIF image from stream
+     * Gets frame n if it is ready to be drawn, without decoding or expanding it, and without waiting
+     * for the frames being decoded meanwhile. Once it is, returns the bitmaps of the frames outside
+     * its window to the pool, like {@link #getFrame(int)}.
      *
-     * @param is containing GIF file.
-     * @return read status code (0 = no errors)
+     * @param n index of the frame
+     * @return frame, or null if n is invalid or the frame is not decoded yet, see {@link #prefetch(int)}
      */
-
-    public int read(InputStream is) throws IOException {
-        init();
-        if (is != null) {
-            byte[] buffer = Utils.streamToBytes(is);
-            mGifHeader = new GifHeader(buffer, mOffset);
-            mOffset += mGifHeader.size;
-            mWidth = mGifHeader.getWidth();
-            mHeight = mGifHeader.getHeight();
-            if (!mGifHeader.getSignature().equals("GIF")) {
-                return STATUS_FORMAT_ERROR;
-            }
-            while (buffer[mOffset] != TRR_CODE) {
-                if (buffer[mOffset] == IMG_CODE) {
-                    // ImageBlock
-                    mImageBlock = new ImageBlock(buffer, mOffset);
-                    mOffset += mImageBlock.size;
-
-                    mFrameCount++;
-                    // create new image to receive frame data
-                    mCurrentImage = extractImage();
-                    if (mLastDispose > 0) {
-                        if (mLastDispose == 3) {
-                            // use image before last
-                            int n = mFrameCount - 2;
-                            if (n > 0) {
-                                mLastImage = getFrame(n - 1);
-                            } else {
-                                mLastImage = null;
-                            }
-                        }
-                    }
-                    mGifFrames.add(new GifFrame(mCurrentImage, mDelay)); // add image to frame
-                    resetFrame();
-                } else if (buffer[mOffset] == EXT_CODE) {
-                    if (buffer[mOffset + 1] == GC_EXT) {
-                        //GraphicControlExtension
-                        mGcExt = new GraphicControlExtension(buffer, mOffset);
-                        mOffset += mGcExt.size;
-                        mDispose = mGcExt.getDisposalMothod(); // disposal method
-                        if (mDispose == 0) {
-                            mDispose = 1; // elect to keep old image if discretionary
-                        }
-                        mDelay = mGcExt.getDelayTime() * 10; // delay in milliseconds
-                    } else if (buffer[mOffset + 1] == APP_EXT) {
-                        //ApplicationExtension
-                        ApplicationExtension appExt = new ApplicationExtension(buffer, mOffset);
-                        mOffset += appExt.size;
-                    } else if (buffer[mOffset + 1] == CMT_EXT) {
-                        //CommentExtension
-                        CommentExtension cmtExt = new CommentExtension(buffer, mOffset);
-                        mOffset += cmtExt.size;
-                    } else if (buffer[mOffset + 1] == TXT_EXT) {
-                        //PlainTextExtension
-                        PlainTextExtension txtExt = new PlainTextExtension(buffer, mOffset);
-                        mOffset += txtExt.size;
-                    } else {
-                        throw new IOException();
-                    }
-                } else {
-                    throw new IOException();
-                }
-            }
-        } else {
-            mStatus = STATUS_OPEN_ERROR;
+    public synchronized Bitmap getReadyFrame(int n) {
+        int frameCount = getFrameCount();
+        if (frameCount <= 0)
+            return null;
+        n = n % frameCount;
+        Bitmap image = mGifFrames.get(n).image;
+        if (image != null && hasFrameWindow()) {
+            evictFrames(n);
         }
-        return mStatus;
+        return image;
     }
 
     /**
-     * Initializes or re-initializes reader
+     * Enables lazy decoding. {@link #read(java.io.InputStream)} then only indexes the frames
+     * and {@link #getFrame(int)} decodes them on demand, keeping at most
+     * {@link #setFrameWindowSize(int)} frames in memory.
+     * Must be called before reading.
+     * Lazily decoded gifs are not kept in {@link GifCache}, see {@link #hasFrameWindow()}.
+     *
+     * @param lazyDecoding true to decode frames on demand
      */
-    protected void init() {
-        mStatus = STATUS_OK;
-        mFrameCount = 0;
-        mGifFrames = new ArrayList<GifFrame>();
+    public void setLazyDecoding(boolean lazyDecoding) {
+        mLazyDecoding = lazyDecoding;
+        setDecodeWhileReading(!lazyDecoding);
+    }
+
+    public boolean isLazyDecoding() {
+        return mLazyDecoding;
     }
 
     /**
-     * Resets frame state for reading next image.
+     * Sets the number of frames kept in lazy mode: the current frame plus the prefetched ones.
+     *
+     * @param frameWindowSize number of frames, at least 1
      */
-    protected void resetFrame() {
-        mLastDispose = mDispose;
-        mLastImage = mCurrentImage;
-        mDispose = 0;
-        mDelay = 0;
+    public void setFrameWindowSize(int frameWindowSize) {
+        mFrameWindowSize = Math.max(1, frameWindowSize);
     }
 
     /**
-     * Extract new image
+     * Decodes frame n, if needed, and the frames following it so they are ready when displayed.
+     * Frames are decoded one at a time, so {@link #getFrame(int)} waits for one frame at most.
+     * Does nothing unless lazy decoding or indexed frames are enabled.
      *
-     * @return image
+     * @param n index of the current frame
      */
-    private Bitmap extractImage() {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        try {
-            outputStream.write(mGifHeader.bytes);
-            if (mGcExt != null) {
-                if ((mWidth != mImageBlock.getImageWidth() || mHeight != mImageBlock.getImageHeight()) &&
-                        mGcExt.getTransparentColorFlag() == 0) {
-                    mGcExt.setTransparentColorFlagTrue();
-                }
-                outputStream.write(mGcExt.bytes);
-            }
-            outputStream.write(mImageBlock.bytes);
-            outputStream.write((byte) 0x3B);
-            outputStream.flush();
-
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inMutable = true;
-            options.inPreferredConfig = Bitmap.Config.RGB_565;
-            Bitmap newBitmap = BitmapFactory.decodeStream(new BufferedInputStream(new ByteArrayInputStream(outputStream.toByteArray())));
-            if (newBitmap != null) {
-                if (mLastImage == null) {
-                    return newBitmap;
+    public void prefetch(int n) {
+        int frameCount = getFrameCount();
+        if (!hasFrameWindow() || frameCount <= 0) {
+            return;
+        }
+        n = n % frameCount;
+        for (int i = 0; i < mFrameWindowSize; i++) {
+            synchronized (mDecodeLock) {
+                if (mLazyDecoding) {
+                    decodeUpTo((n + i) % frameCount, n);
                 } else {
-                    Bitmap bitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.RGB_565);
-                    Canvas canvas = new Canvas(bitmap);
-                    canvas.drawBitmap(mLastImage, 0, 0, null);
-                    canvas.drawBitmap(newBitmap, 0, 0, null);
-                    return bitmap;
-                }
-            } else {
-                if (mLastImage != null) {
-                    return mLastImage;
+                    expandFrame((n + i) % frameCount);
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                outputStream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
         }
-        return null;
     }
 
-    private class GifHeader {
-        public byte[] bytes;
-        public int size;
-
-        public GifHeader(byte[] bytes, int offset) {
-            boolean globalColorTableFlag = (bytes[offset + 0x0A] & 0x80) != 0x00;
-            int globalColorTableSize = (bytes[offset + 0x0A] & 0x07);
+    /**
+     * Sets the pool bitmaps are taken from when compositing and returned to when evicted.
+     * Defaults to {@link BitmapPool#getDefault()}.
+     *
+     * @param bitmapPool pool
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+        mBitmapAdapter.setBitmapPool(bitmapPool);
+    }
 
-            // get size
-            size = 0x0D;
-            if (globalColorTableFlag) {
-                size += Math.pow(2, (globalColorTableSize + 1)) * 3;
+    /**
+     * Returns the bitmaps of the frames outside the window of the current frame to the pool,
+     * apart from the indexed frames that could not be indexed.
+     */
+    private synchronized void evictFrames(int current) {
+        int frameCount = getFrameCount();
+        for (int i = 0; i < frameCount; i++) {
+            GifFrame frame = mGifFrames.get(i);
+            if (frame.image != null && (mLazyDecoding || frame.indices != null) && !isInFrameWindow(i, current)) {
+                mBitmapPool.put(frame.image);
+                frame.image = null;
             }
-
-            this.bytes = new byte[size];
-            System.arraycopy(bytes, offset, this.bytes, 0, size);
-        }
-
-        public String getSignature() {
-            return new String(bytes, 0, 3);
-        }
-
-        public String getVersion() {
-            return new String(bytes, 3, 3);
-        }
-
-        public int getWidth() {
-            return (bytes[6] & 0xFF) + ((bytes[7] & 0xFF) << 8);
-        }
-
-        public int getHeight() {
-            return (bytes[8] & 0xFF) + ((bytes[9] & 0xFF) << 8);
-        }
-
-        public int getGlobalColorTableFlag() {
-            return (bytes[10] & 0x80) >> 7;
-        }
-
-        public int getColorResolution() {
-            return (bytes[10] & 0x70) >> 4;
-        }
-
-        public int getSortFlag() {
-            return (bytes[10] & 0x08) >> 3;
-        }
-
-        public int getSizeOfGlobalColorTable() {
-            return (bytes[10] & 0x07);
-        }
-
-        public int getBackgroundColorIndex() {
-            return bytes[11] & 0xFF;
-        }
-
-        public int getPixelAspectRatio() {
-            return bytes[12];
         }
+    }
 
-        public int[] getGlobalColorTable() {
-            if (getGlobalColorTableFlag() == 0) {
-                return new int[0];
-            }
-            int[] colors = new int[(int) Math.pow(2, getSizeOfGlobalColorTable() + 1)];
-            for (int i = 0; i < colors.length; i++) {
-                colors[i] = ((bytes[13 + (i * 3)] & 0xFF) << 16) + ((bytes[13 + (i * 3) + 1] & 0xFF) << 8) + (bytes[13 + (i * 3) + 2] & 0xFF);
+    /**
+     * Expands frame n to a bitmap, unless it already has one.
+     */
+    private Bitmap expandFrame(int n) {
+        Bitmap image = getImage(n);
+        if (image == null) {
+            byte[] indices;
+            synchronized (this) {
+                indices = mGifFrames.get(n).indices;
             }
-            return colors;
+            image = createImage(indices, isOpaque(n));
+            setImage(n, image);
         }
+        return image;
     }
 
-    private class ImageBlock {
-        public byte[] bytes;
-        public int size;
-
-        public ImageBlock(byte[] bytes, int offset) {
-            int blockSize;
-            boolean localColorTableFlag = (bytes[offset + 0x09] & 0x80) != 0x00;
-            int localColorTableSize = (bytes[offset + 0x09] & 0x07);
-
-            //get size
-            size = 0x0A;
-            if (localColorTableFlag) {
-                size += Math.pow(2, (localColorTableSize + 1)) * 3;
+    /**
+     * Composites frames until frame n is decoded. Only the frames inside the window of the
+     * current frame get a bitmap, the others are only composited.
+     */
+    private Bitmap decodeUpTo(int n, int current) {
+        Bitmap image = getImage(n);
+        if (image != null) {
+            return image;
+        }
+        if (mFrameStore != null && mFrameStore.contains(n)) {
+            mFrameStore.expand(n, mStoredIndices);
+            image = createImage(mStoredIndices, isOpaque(n));
+            setImage(n, image);
+            return image;
+        }
+        for (int i = getFirstFrameToComposite(n); i <= n; i++) {
+            int[] pixels = getFramePixels(i);
+            if (mFrameStore != null && !mFrameStore.contains(i) && mPalette.index(pixels, mStoredIndices)) {
+                mFrameStore.put(i, mStoredIndices);
             }
-            size += 1; //LZW Minimum Code Size
-
-            //ImageData
-            blockSize = bytes[offset + size] & 0xFF;
-            size += 1;
-            while (blockSize != 0x00) {
-                size += blockSize;
-                blockSize = bytes[offset + size] & 0xFF;
-                size += 1;
+            if (i < n && isInFrameWindow(i, current) && getImage(i) == null) {
+                setImage(i, createImage(i));
             }
-
-            this.bytes = new byte[size];
-            System.arraycopy(bytes, offset, this.bytes, 0, size);
-        }
-
-        public int getImageSeparator() {
-            return bytes[0] & 0xFF;
-        }
-
-        public int ImageLeftPosition() {
-            return (bytes[1] & 0xFF) + ((bytes[2] & 0xFF) << 8);
-        }
-
-        public int getImageTopPosition() {
-            return (bytes[3] & 0xFF) + ((bytes[4] & 0xFF) << 8);
-        }
-
-        public int getImageWidth() {
-            return (bytes[5] & 0xFF) + ((bytes[6] & 0xFF) << 8);
         }
+        // frame n is on the canvas now, or was already
+        image = createImage(n);
+        setImage(n, image);
+        return image;
+    }
 
-        public int getImageHeight() {
-            return (bytes[7] & 0xFF) + ((bytes[8] & 0xFF) << 8);
-        }
+    private synchronized Bitmap getImage(int n) {
+        return mGifFrames.get(n).image;
+    }
 
-        public int getLocalColorTableFlag() {
-            return (bytes[9] & 0x80) >> 7;
-        }
+    private synchronized void setImage(int n, Bitmap image) {
+        mGifFrames.get(n).image = image;
+    }
 
-        public int getInterlaceFlag() {
-            return (bytes[9] & 0x40) >> 6;
-        }
+    private boolean isInFrameWindow(int index, int current) {
+        int frameCount = getFrameCount();
+        return (index - current + frameCount) % frameCount < mFrameWindowSize;
+    }
 
-        public int getSortFlag() {
-            return (bytes[9] & 0x20) >> 5;
-        }
+    /**
+     * Sets a listener notified every time a frame has been decoded.
+     * The listener is called on the thread calling {@link #read(java.io.InputStream)};
+     * frames up to the notified index can be retrieved from any thread right away.
+     *
+     * @param listener listener, or null to remove it
+     */
+    public void setOnFrameDecodedListener(OnFrameDecodedListener listener) {
+        mOnFrameDecodedListener = listener;
+    }
 
-        public int getReserved() {
-            return (bytes[9] & 0x18) >> 2;
-        }
+    /**
+     * Sets a listener notified with coarse previews of the first frame while it is read, after
+     * its first and second interlace passes, for large interlaced gifs read from a slow stream.
+     * The listener is called on the thread calling {@link #read(java.io.InputStream)};
+     * gifs read from a buffer are not previewed, their frames are decoded right away.
+     *
+     * @param listener listener, or null to remove it
+     */
+    public void setOnPreviewListener(OnPreviewListener listener) {
+        mOnPreviewListener = listener;
+        setPreviewFirstFrame(listener != null);
+    }
 
-        public int getSizeOfLocalColorTable() {
-            return bytes[9] & 0x03;
+    @Override
+    protected boolean readHeader(GifHeader header) {
+        if (!super.readHeader(header)) {
+            return false;
         }
-
-        public int[] getLocalColorTable() {
-            if (getLocalColorTableFlag() == 0) {
-                return new int[0];
-            }
-            int[] colors = new int[(int) Math.pow(2, getSizeOfLocalColorTable() + 1)];
-            for (int i = 0; i < colors.length; i++) {
-                colors[i] = ((bytes[10 + (i * 3)] & 0xFF) << 16) + ((bytes[10 + (i * 3) + 1] & 0xFF) << 8) + (bytes[10 + (i * 3) + 2] & 0xFF);
-            }
-            return colors;
+        if (isIndexedFrames() || mLazyDecoding && mFrameStoreBudget > 0) {
+            mPalette = new GifPalette(getGlobalColorTable());
         }
-
-        public int getLZWMinimumCodeSize() {
-            if (getLocalColorTableFlag() == 0) {
-                return bytes[10] & 0xFF;
-            } else {
-                return bytes[10 + (int) Math.pow(2, getSizeOfLocalColorTable() + 1) * 3] & 0xFF;
-            }
+        if (mLazyDecoding && mFrameStoreBudget > 0) {
+            int pixelCount = getImageWidth() * getImageHeight();
+            mFrameStore = new GifFrameStore(pixelCount, mFrameStoreBudget);
+            mStoredIndices = new byte[pixelCount];
+            getMetrics().onBytesAllocated(self, pixelCount);
         }
+        return true;
     }
 
-    private class ApplicationExtension {
-        public byte[] bytes;
-        public int size;
-
-        public ApplicationExtension(byte[] bytes, int offset) {
-            int blockSize;
-            // get size
-            size = 0x0E;
+    @Override
+    protected void onPreview(int[] pixels, int passes) {
+        OnPreviewListener listener = mOnPreviewListener;
+        if (listener == null) {
+            return;
+        }
+        int width = getImageWidth();
+        int height = getImageHeight();
+        Bitmap preview = mBitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+        getMetrics().onBytesAllocated(self, width * height * 4);
+        preview.setPixels(pixels, 0, width, 0, 0, width, height);
+        listener.onPreview(self, preview, passes);
+    }
 
-            blockSize = bytes[offset + size] & 0xFF;
-            size += 1;
-            while (blockSize != 0x00) {
-                size += blockSize;
-                blockSize = bytes[offset + size] & 0xFF;
-                size += 1;
+    /**
+     * Keeps the frame read as a bitmap, or as indices in indexed mode. In lazy mode the frame
+     * only gets a slot, its bitmap is decoded by getFrame().
+     */
+    @Override
+    protected void onFrameRead(int index) {
+        GifFrame frame = new GifFrame();
+        boolean opaque = isOpaque(index);
+        if (isIndexedFrames()) {
+            byte[] indices = new byte[getImageWidth() * getImageHeight()];
+            getMetrics().onBytesAllocated(self, indices.length);
+            if (mPalette.index(getFramePixels(index), indices)) {
+                frame.indices = indices;
             }
-
-            this.bytes = new byte[size];
-            System.arraycopy(bytes, offset, this.bytes, 0, size);
-        }
-
-        public int getExtensionIntroducer() {
-            return bytes[0] & 0xFF;
-        }
-
-        public int getExtensionLabel() {
-            return bytes[1] & 0xFF;
         }
-
-        public int getBlockSize1() {
-            return bytes[2] & 0xFF;
-        }
-
-        public String getApplicationIdentifier() {
-            return new String(bytes, 3, 8);
+        if (!mLazyDecoding && frame.indices == null) {
+            frame.image = createImage(index);
         }
-
-        public String getApplicationAuthenticationCode() {
-            return new String(bytes, 11, 3);
+        synchronized (this) {
+            mGifFrames.add(frame);
+            if (frame.indices != null) {
+                mStoredByteCount += frame.indices.length;
+            } else if (frame.image != null) {
+                mStoredByteCount += getImageWidth() * getImageHeight() * getBytesPerPixel(opaque);
+            }
+            mBytesPerPixel = Math.max(mBytesPerPixel, getBytesPerPixel(opaque));
         }
     }
 
-    private class GraphicControlExtension {
-        public byte[] bytes;
-        public int size;
-
-        public GraphicControlExtension(byte[] bytes, int offset) {
-            size = 8;
-            this.bytes = new byte[size];
-            System.arraycopy(bytes, offset, this.bytes, 0, size);
-        }
-
-        public int getExtensionIntroducer() {
-            return bytes[0] & 0xFF;
-        }
-
-        public int getGraphicControlLabel() {
-            return bytes[1] & 0xFF;
-        }
-
-        public int getBlockSize() {
-            return bytes[2] & 0xFF;
-        }
-
-        public int getReserved() {
-            return (bytes[3] & 0xE0) >> 5;
-        }
-
-        public int getDisposalMothod() {
-            return (bytes[3] & 0x1C) >> 2;
-        }
-
-        public int getUserInputFlag() {
-            return (bytes[3] & 0x02) >> 1;
-        }
-
-        public int getTransparentColorFlag() {
-            return (bytes[3] & 0x01);
-        }
-
-        public int getDelayTime() {
-            return (bytes[4] & 0xFF) + ((bytes[5] & 0xFF) << 8);
+    @Override
+    protected void onFramePublished(int index) {
+        if (mOnFrameDecodedListener != null) {
+            mOnFrameDecodedListener.onFrameDecoded(self, index);
         }
+    }
 
-        public int getTransparentColorIndex() {
-            return bytes[6];
-        }
+    /**
+     * Initializes or re-initializes reader
+     */
+    @Override
+    protected void init() {
+        super.init();
+        synchronized (this) {
+            mGifFrames = new ArrayList<GifFrame>();
+        }
+        mStoredByteCount = 0;
+        mBytesPerPixel = 2;
+        mPalette = null;
+        mFrameStore = null;
+    }
 
-        public void setTransparentColorFlagTrue() {
-            int value = getReserved() | getDisposalMothod() | getUserInputFlag() | 0x01;
-            bytes[3] = (byte) Integer.parseInt(Utils.toHex(value, 2), 16);
+    private Bitmap.Config getBitmapConfig(boolean opaque) {
+        if (mBitmapConfig != null) {
+            return mBitmapConfig;
         }
+        return opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
     }
 
-    private class CommentExtension {
-        public byte[] bytes;
-        public int size;
-
-        public CommentExtension(byte[] bytes, int offset) {
-            int blockSize;
-            // get size
-            size = 0x02;
+    private int getBytesPerPixel(boolean opaque) {
+        return getBitmapConfig(opaque) == Bitmap.Config.ARGB_8888 ? 4 : 2;
+    }
 
-            blockSize = bytes[offset + size] & 0xFF;
-            size += 1;
-            while (blockSize != 0x00) {
-                size += blockSize;
-                blockSize = bytes[offset + size] & 0xFF;
-                size += 1;
+    /**
+     * Expands palette indices into a new image.
+     *
+     * @param indices indices of the frame
+     * @param opaque  whether the frame has no transparent pixel
+     * @return image
+     */
+    private Bitmap createImage(byte[] indices, boolean opaque) {
+        int width = getImageWidth();
+        int height = getImageHeight();
+        int pixelCount = width * height;
+        getMetrics().onBytesAllocated(self, pixelCount * getBytesPerPixel(opaque));
+        Bitmap bitmap = mBitmapPool.get(width, height, getBitmapConfig(opaque));
+        if (bitmap.getConfig() == Bitmap.Config.RGB_565) {
+            // expanded straight to the bitmap format, no conversion left to do
+            if (mExpandedRgb565Pixels == null || mExpandedRgb565Pixels.length != pixelCount) {
+                mExpandedRgb565Pixels = new short[pixelCount];
+                mExpandedRgb565Buffer = ShortBuffer.wrap(mExpandedRgb565Pixels);
+                getMetrics().onBytesAllocated(self, pixelCount * 2);
             }
-
-            this.bytes = new byte[size];
-            System.arraycopy(bytes, offset, this.bytes, 0, size);
+            mPalette.expand(indices, mExpandedRgb565Pixels, pixelCount);
+            mExpandedRgb565Buffer.rewind();
+            bitmap.copyPixelsFromBuffer(mExpandedRgb565Buffer);
+            return bitmap;
+        }
+        if (mExpandedPixels == null || mExpandedPixels.length < pixelCount) {
+            mExpandedPixels = new int[pixelCount];
         }
+        mPalette.expand(indices, mExpandedPixels, pixelCount);
+        bitmap.setPixels(mExpandedPixels, 0, width, 0, 0, width, height);
+        return bitmap;
     }
 
-    private class PlainTextExtension {
-        public byte[] bytes;
-        public int size;
-
-        public PlainTextExtension(byte[] bytes, int offset) {
-            int blockSize;
-            // get size
-            size = 0x0F;
-
-            blockSize = bytes[offset + size] & 0xFF;
-            size += 1;
-            while (blockSize != 0x00) {
-                size += blockSize;
-                blockSize = bytes[offset + size] & 0xFF;
-                size += 1;
-            }
-
-            this.bytes = new byte[size];
-            System.arraycopy(bytes, offset, this.bytes, 0, size);
-        }
+    /**
+     * Copies frame n, on the canvas, into a new image.
+     *
+     * @param n index of the frame
+     * @return image
+     */
+    private Bitmap createImage(int n) {
+        return mBitmapAdapter.getFrame(n, getBitmapConfig(isOpaque(n)));
     }
 }
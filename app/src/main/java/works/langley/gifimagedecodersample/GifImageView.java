@@ -2,19 +2,24 @@ package works.langley.gifimagedecodersample;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.widget.ImageView;
 import android.widget.RelativeLayout;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class GifImageView extends ImageView {
     private static final String TAG = GifImageView.class.getSimpleName();
@@ -28,9 +33,11 @@ public class GifImageView extends ImageView {
     public static final int DECODE_STATUS_DECODING = 1;
     public static final int DECODE_STATUS_DECODED = 2;
 
-    private GifImageDecoder mDecoder;
+    private static final ExecutorService sPrefetchExecutor = Executors.newSingleThreadExecutor();
+
+    private volatile GifImageDecoder mDecoder;
     private Bitmap mBitmap;
-    private InputStream mInputStream;
+    private GifStreamSource mStreamSource;
 
     public int mImageType = IMAGE_TYPE_UNKNOWN;
     public int mDecodeStatus = DECODE_STATUS_UNDECODE;
@@ -40,8 +47,52 @@ public class GifImageView extends ImageView {
 
     private int mResId;
     private String mFilePath;
+    private String mCacheKey;
 
     private boolean isPlaying = false;
+    private GifDecodeScheduler.Request mDecodeRequest;
+    private volatile int mDecodeGeneration = 0;
+    private volatile boolean mWaitingForFrame = false; // played every frame decoded so far
+    private boolean mLazyDecoding = false;
+    private boolean mIndexedFrames = false;
+    private int mFrameWindowSize = -1;
+    private int mFrameStoreBudget = 0;
+    private int mProgressiveFrameCount = 1;
+    private boolean mDownsampling = false;
+    private boolean mProgressivePreview = false;
+    private Bitmap mPreview; // coarse first frame shown while it is read
+    private Bitmap mLastFrame; // frame last drawn, kept on screen until the next one is decoded
+
+    private volatile int mPrefetchIndex;
+    private volatile boolean mFrameNotReady = false; // drawing the last frame until the prefetch is done
+    private final AtomicBoolean mPrefetchPending = new AtomicBoolean();
+    // at most one queued per view, prefetching the frames of the latest index with the decoder of the moment
+    private final Runnable mPrefetchTask = new Runnable() {
+        @Override
+        public void run() {
+            mPrefetchPending.set(false);
+            GifImageDecoder decoder = mDecoder;
+            if (decoder == null || !decoder.hasFrameWindow()) {
+                return;
+            }
+            decoder.prefetch(mPrefetchIndex);
+            if (mFrameNotReady) {
+                mFrameNotReady = false;
+                postInvalidate();
+            }
+        }
+    };
+
+    private final GifFrameTicker.Callback mFrameCallback = new GifFrameTicker.Callback() {
+        @Override
+        public void onFrameDue() {
+            invalidateDueFrame();
+        }
+    };
+    private float[] mDrawParams; // position and scaling the gif was last drawn with
+    private final Rect mDirtyRect = new Rect();
+    private final RectF mFrameRect = new RectF();
+    private final Paint mFramePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
     private float mScale = -1;
     private int mOverriddenDensity = -1;
@@ -56,17 +107,18 @@ public class GifImageView extends ImageView {
         super(context, attrs);
     }
 
-    private InputStream getInputStream() {
-        if (mInputStream != null)
-            return mInputStream;
+    /**
+     * Gets the key of the current gif in {@link GifCache}.
+     *
+     * @return key, or null for streams set without one
+     */
+    private String getCacheKey() {
+        if (mCacheKey != null)
+            return mCacheKey;
         if (mFilePath != null)
-            try {
-                return new FileInputStream(mFilePath);
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            }
+            return GifCache.keyForFile(mFilePath);
         if (mResId > 0)
-            return getContext().getResources().openRawResource(mResId);
+            return GifCache.keyForResource(mResId);
         return null;
     }
 
@@ -87,9 +139,11 @@ public class GifImageView extends ImageView {
      * @param cacheImage
      */
     public void setGif(String filePath, Bitmap cacheImage) {
+        cancelDecode();
         this.mResId = 0;
         this.mFilePath = filePath;
-        this.mInputStream = null;
+        this.mStreamSource = null;
+        this.mCacheKey = null;
         mImageType = IMAGE_TYPE_UNKNOWN;
         mDecodeStatus = DECODE_STATUS_UNDECODE;
         isPlaying = false;
@@ -114,9 +168,11 @@ public class GifImageView extends ImageView {
      * @param cacheImage
      */
     public void setGif(int resId, Bitmap cacheImage) {
+        cancelDecode();
         this.mFilePath = null;
         this.mResId = resId;
-        this.mInputStream = null;
+        this.mStreamSource = null;
+        this.mCacheKey = null;
         mImageType = IMAGE_TYPE_UNKNOWN;
         mDecodeStatus = DECODE_STATUS_UNDECODE;
         isPlaying = false;
@@ -141,9 +197,23 @@ public class GifImageView extends ImageView {
      * @param cacheImage
      */
     public void setGif(InputStream inputStream, Bitmap cacheImage) {
+        setGif(inputStream, cacheImage, null);
+    }
+
+    /**
+     * set gif input stream, cached in {@link GifCache} under the given key
+     *
+     * @param inputStream
+     * @param cacheImage
+     * @param cacheKey
+     */
+    public void setGif(InputStream inputStream, Bitmap cacheImage, String cacheKey) {
+        cancelDecode();
         this.mFilePath = null;
         this.mResId = 0;
-        this.mInputStream = inputStream;
+        // kept as bytes once read, to decode again after a cancelled decode
+        this.mStreamSource = inputStream != null ? new GifStreamSource(inputStream) : null;
+        this.mCacheKey = cacheKey;
         mImageType = IMAGE_TYPE_UNKNOWN;
         mDecodeStatus = DECODE_STATUS_UNDECODE;
         isPlaying = false;
@@ -152,34 +222,290 @@ public class GifImageView extends ImageView {
     }
 
     private void decode() {
+        cancelDecode();
         release();
         mIndex = 0;
 
+        final int sampleSize = getSampleSize();
+        final String gifKey = getCacheKey();
+        final String cacheKey = gifKey != null ? GifCache.keyForSampleSize(gifKey, sampleSize) : null;
+        if (cacheKey != null) {
+            GifImageDecoder decoder = GifCache.getInstance().get(cacheKey);
+            if (decoder != null) {
+                mDecoder = decoder;
+                mImageType = IMAGE_TYPE_DYNAMIC;
+                mTime = System.currentTimeMillis();
+                mDecodeStatus = DECODE_STATUS_DECODED;
+                return;
+            }
+        }
+
         mDecodeStatus = DECODE_STATUS_DECODING;
 
-        new Thread() {
+        final int generation = ++mDecodeGeneration;
+        // the view may be given another gif before the decode starts
+        final String filePath = mFilePath;
+        final GifStreamSource streamSource = mStreamSource;
+        final int resId = mResId;
+        final Resources resources = getResources();
+        final boolean lazyDecoding = mLazyDecoding;
+        final boolean indexedFrames = mIndexedFrames;
+        final int frameWindowSize = mFrameWindowSize;
+        final int frameStoreBudget = mFrameStoreBudget;
+        final int progressiveFrameCount = mProgressiveFrameCount;
+        // files are read too quickly for previews to be worth it
+        final boolean progressivePreview = mProgressivePreview && filePath == null;
+        // decodes are only shared by views decoding the gif the same way
+        String decodeKey = cacheKey != null ? getDecodeKey(cacheKey, lazyDecoding, indexedFrames,
+                frameWindowSize, frameStoreBudget, progressivePreview) : null;
+        mDecodeRequest = GifDecodeScheduler.getInstance().submit(decodeKey, new GifDecodeScheduler.Source() {
             @Override
-            public void run() {
-                try {
-                    mDecoder = new GifImageDecoder();
-                    mDecoder.read(getInputStream());
-                } catch (IOException e) {
-                    e.printStackTrace();
+            public int read(GifImageDecoder decoder) throws IOException {
+                decoder.setLazyDecoding(lazyDecoding);
+                decoder.setIndexedFrames(indexedFrames);
+                decoder.setSampleSize(sampleSize);
+                if (frameWindowSize > 0) {
+                    decoder.setFrameWindowSize(frameWindowSize);
+                }
+                decoder.setFrameStoreBudget(frameStoreBudget);
+                if (!progressivePreview) {
+                    decoder.setOnPreviewListener(null);
                 }
-                if (mDecoder.mWidth == 0 || mDecoder.mHeight == 0) {
-                    mImageType = IMAGE_TYPE_STATIC;
+                if (filePath != null) {
+                    // parse and decode straight from the mapped file, off the Java heap
+                    return decoder.read(Utils.mapFile(filePath));
+                } else if (streamSource != null) {
+                    return streamSource.read(decoder);
                 } else {
-                    mImageType = IMAGE_TYPE_DYNAMIC;
+                    return decoder.read(resId > 0 ? resources.openRawResource(resId) : null);
                 }
-                postInvalidate();
-                mTime = System.currentTimeMillis();
-                mDecodeStatus = DECODE_STATUS_DECODED;
             }
-        }.start();
+
+            @Override
+            public void close() {
+                // another view is reading the same gif
+                if (streamSource != null) {
+                    streamSource.close();
+                }
+            }
+        }, new GifDecodeScheduler.ProgressCallback() {
+            private boolean mStarted = false;
+
+            @Override
+            public void onFrameDecoded(final GifImageDecoder decoder, int index) {
+                if (lazyDecoding || progressiveFrameCount <= 0 || generation != mDecodeGeneration) {
+                    return;
+                }
+                if (!mStarted && index + 1 >= progressiveFrameCount) {
+                    // start playing before the remaining frames are decoded,
+                    // frames may be past the count when joining a decode in progress
+                    mStarted = true;
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation != mDecodeGeneration || mDecoder == decoder) {
+                                return;
+                            }
+                            mImageType = IMAGE_TYPE_DYNAMIC;
+                            mTime = System.currentTimeMillis();
+                            mDecoder = decoder;
+                            mPreview = null;
+                            invalidate();
+                        }
+                    });
+                } else if (mWaitingForFrame) {
+                    mWaitingForFrame = false;
+                    postInvalidate();
+                }
+            }
+
+            @Override
+            public void onPreview(GifImageDecoder decoder, final Bitmap preview, int passes) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mDecodeGeneration || mDecoder != null) {
+                            return;
+                        }
+                        mPreview = preview;
+                        invalidate();
+                    }
+                });
+            }
+
+            @Override
+            public void onDecoded(final GifImageDecoder decoder, final int status) {
+                // the view state is only touched on the UI thread, like setGif() and onDraw() do
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDecodeFinished(generation, cacheKey, decoder, status);
+                    }
+                });
+            }
+        }, isShown());
+    }
+
+    /**
+     * Gets the key a decode is shared under: the gif, and every option the decoder is configured with.
+     */
+    private static String getDecodeKey(String cacheKey, boolean lazyDecoding, boolean indexedFrames,
+                                       int frameWindowSize, int frameStoreBudget, boolean progressivePreview) {
+        return cacheKey + "?lazy=" + lazyDecoding + "&indexed=" + indexedFrames + "&window=" + frameWindowSize
+                + "&store=" + frameStoreBudget + "&preview=" + progressivePreview;
+    }
+
+    /**
+     * Shows a gif once read, on the UI thread.
+     */
+    private void onDecodeFinished(int generation, String cacheKey, GifImageDecoder decoder, int status) {
+        if (generation != mDecodeGeneration) {
+            // the view was given another gif meanwhile
+            return;
+        }
+        // done, there is nothing left to cancel
+        mDecodeRequest = null;
+        if (mDecoder != decoder) {
+            mTime = System.currentTimeMillis();
+        }
+        mDecoder = decoder;
+        mPreview = null;
+        if (mDecoder.getWidth() == 0 || mDecoder.getHeight() == 0) {
+            mImageType = IMAGE_TYPE_STATIC;
+        } else {
+            mImageType = IMAGE_TYPE_DYNAMIC;
+            if (cacheKey != null && status == GifImageDecoder.STATUS_OK) {
+                GifCache.getInstance().put(cacheKey, mDecoder);
+            }
+        }
+        mDecodeStatus = DECODE_STATUS_DECODED;
+        invalidate();
+    }
+
+    /**
+     * Gets the subsampling factor to decode the gif with: none unless downsampling is enabled,
+     * otherwise as much as the size the gif was last drawn at allows.
+     */
+    private int getSampleSize() {
+        float[] params = mDrawParams;
+        if (!mDownsampling || params == null || mBitmap == null) {
+            return 1;
+        }
+        int targetWidth = (int) Math.ceil(mBitmap.getWidth() * params[3]);
+        int targetHeight = (int) Math.ceil(mBitmap.getHeight() * params[2]);
+        return GifImageDecoder.calculateSampleSize(mBitmap.getWidth(), mBitmap.getHeight(), targetWidth, targetHeight);
+    }
+
+    /**
+     * Cancels the decode in progress, if any.
+     */
+    private void cancelDecode() {
+        mDecodeGeneration++;
+        if (mDecodeRequest != null) {
+            mDecodeRequest.cancel();
+            mDecodeRequest = null;
+        }
+        if (mDecodeStatus == DECODE_STATUS_DECODING) {
+            mDecodeStatus = DECODE_STATUS_UNDECODE;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelDecode();
+        GifFrameTicker.getInstance().cancel(mFrameCallback);
     }
 
     public void release() {
         mDecoder = null;
+        mPreview = null;
+        mLastFrame = null;
+    }
+
+    /**
+     * Decode frames on demand instead of keeping every frame in memory.
+     * Such gifs are not kept in {@link GifCache}, since their frames change as they play.
+     * Takes effect the next time the gif is decoded.
+     *
+     * @param lazyDecoding
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        mLazyDecoding = lazyDecoding;
+    }
+
+    /**
+     * Keep frames as 8-bit indices into the color table of the gif, only expanded to bitmaps
+     * around the frame shown. Such gifs are not kept in {@link GifCache}, like lazily decoded ones.
+     * Takes effect the next time the gif is decoded.
+     *
+     * @param indexedFrames
+     */
+    public void setIndexedFrames(boolean indexedFrames) {
+        mIndexedFrames = indexedFrames;
+    }
+
+    /**
+     * Decode smaller frames when the view shows the gif at half its size or less,
+     * e.g. as a thumbnail. Frames stay at least as large as they are displayed.
+     * Takes effect the next time the gif is decoded.
+     *
+     * @param downsampling
+     */
+    public void setDownsampling(boolean downsampling) {
+        mDownsampling = downsampling;
+    }
+
+    /**
+     * set the number of frames kept in memory when decoding lazily
+     *
+     * @param frameWindowSize
+     */
+    public void setFrameWindowSize(int frameWindowSize) {
+        mFrameWindowSize = frameWindowSize;
+    }
+
+    /**
+     * set the number of bytes of compressed frames kept when decoding lazily, so the gif is
+     * only decoded once as long as it fits. 0 decodes the frames again on every loop.
+     *
+     * @param frameStoreBudget
+     */
+    public void setFrameStoreBudget(int frameStoreBudget) {
+        mFrameStoreBudget = frameStoreBudget;
+    }
+
+    /**
+     * Show coarse previews of a large interlaced gif read from a stream while its first frame is
+     * read, after its first and second interlace passes. Takes effect the next time the gif is decoded.
+     *
+     * @param progressivePreview
+     */
+    public void setProgressivePreview(boolean progressivePreview) {
+        mProgressivePreview = progressivePreview;
+    }
+
+    /**
+     * set the number of frames to decode before starting to play, while the remaining
+     * frames are still being decoded. 0 waits for the whole gif.
+     * Ignored when decoding lazily, since frames are then decoded while playing.
+     *
+     * @param progressiveFrameCount
+     */
+    public void setProgressiveFrameCount(int progressiveFrameCount) {
+        mProgressiveFrameCount = progressiveFrameCount;
+    }
+
+    private void prefetchFrames() {
+        GifImageDecoder decoder = mDecoder;
+        if (decoder == null || !decoder.hasFrameWindow()) {
+            return;
+        }
+        mPrefetchIndex = mIndex;
+        // a prefetch still queued picks up the new index
+        if (mPrefetchPending.compareAndSet(false, true)) {
+            sPrefetchExecutor.execute(mPrefetchTask);
+        }
     }
 
     @Override
@@ -310,6 +636,7 @@ public class GifImageView extends ImageView {
     protected void onDraw(Canvas canvas) {
         if (mBitmap != null) {
             float[] gifDrawParams = applyScaleType(canvas);
+            mDrawParams = gifDrawParams;
             if (mDecodeStatus == DECODE_STATUS_UNDECODE) {
                 canvas.drawBitmap(mBitmap, gifDrawParams[0], gifDrawParams[1], null);
                 if (isPlaying) {
@@ -317,27 +644,25 @@ public class GifImageView extends ImageView {
                     invalidate();
                 }
             } else if (mDecodeStatus == DECODE_STATUS_DECODING) {
-                canvas.drawBitmap(mBitmap, gifDrawParams[0], gifDrawParams[1], null);
-                invalidate();
+                Bitmap preview = mPreview;
+                if (mDecoder != null && isPlaying) {
+                    // progressive playback of the frames decoded so far
+                    drawPlayingFrame(canvas, gifDrawParams);
+                } else if (preview != null) {
+                    // coarse first frame, redrawn once it is decoded
+                    drawPreview(canvas, preview, gifDrawParams);
+                } else {
+                    // redrawn once the first frames are decoded
+                    canvas.drawBitmap(mBitmap, gifDrawParams[0], gifDrawParams[1], null);
+                }
             } else if (mDecodeStatus == DECODE_STATUS_DECODED) {
                 if (mImageType == IMAGE_TYPE_STATIC) {
                     canvas.drawBitmap(mBitmap, gifDrawParams[0], gifDrawParams[1], null);
                 } else if (mImageType == IMAGE_TYPE_DYNAMIC) {
                     if (isPlaying) {
-                        long now = System.currentTimeMillis();
-
-                        if (mTime + mDecoder.getDelay(mIndex) < now) {
-                            mTime += mDecoder.getDelay(mIndex);
-                            incrementFrameIndex();
-                        }
-                        Bitmap bitmap = mDecoder.getFrame(mIndex);
-                        if (bitmap != null) {
-                            canvas.drawBitmap(bitmap, gifDrawParams[0], gifDrawParams[1], null);
-                        }
-                        invalidate();
+                        drawPlayingFrame(canvas, gifDrawParams);
                     } else {
-                        Bitmap bitmap = mDecoder.getFrame(mIndex);
-                        canvas.drawBitmap(bitmap, gifDrawParams[0], gifDrawParams[1], null);
+                        drawPausedFrame(canvas, gifDrawParams);
                     }
                 } else {
                     canvas.drawBitmap(mBitmap, gifDrawParams[0], gifDrawParams[1], null);
@@ -346,6 +671,133 @@ public class GifImageView extends ImageView {
         }
     }
 
+    private void drawPlayingFrame(Canvas canvas, float[] gifDrawParams) {
+        if (mDecoder.getFrameCount() <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        if (mTime + mDecoder.getDelay(mIndex) <= now) {
+            seekToTime(now);
+        }
+        Bitmap bitmap = mDecoder.getReadyFrame(mIndex);
+        if (bitmap == null && mDecoder.hasFrameWindow()) {
+            // decoded in the background, the last frame stays on screen until then
+            mFrameNotReady = true;
+            prefetchFrames();
+            bitmap = mLastFrame;
+        }
+        if (bitmap != null) {
+            drawFrame(canvas, bitmap, gifDrawParams);
+        } else {
+            canvas.drawBitmap(mBitmap, gifDrawParams[0], gifDrawParams[1], null);
+        }
+        if (!mWaitingForFrame) {
+            // redraw when the next frame is due rather than on every vsync
+            GifFrameTicker.getInstance().scheduleFrame(mFrameCallback, mTime + mDecoder.getDelay(mIndex) - now);
+        }
+    }
+
+    /**
+     * Draws the current frame while paused, or the last frame drawn if it could not be decoded.
+     */
+    private void drawPausedFrame(Canvas canvas, float[] gifDrawParams) {
+        Bitmap bitmap = mDecoder.getFrame(mIndex);
+        if (bitmap == null) {
+            bitmap = mLastFrame;
+        }
+        if (bitmap != null) {
+            drawFrame(canvas, bitmap, gifDrawParams);
+        } else {
+            canvas.drawBitmap(mBitmap, gifDrawParams[0], gifDrawParams[1], null);
+        }
+    }
+
+    /**
+     * Draws a frame, scaled back up to the size of the gif if it was subsampled.
+     */
+    private void drawFrame(Canvas canvas, Bitmap bitmap, float[] gifDrawParams) {
+        mLastFrame = bitmap;
+        if (mDecoder.getSampleSize() == 1) {
+            canvas.drawBitmap(bitmap, gifDrawParams[0], gifDrawParams[1], null);
+        } else {
+            mFrameRect.set(gifDrawParams[0], gifDrawParams[1],
+                    gifDrawParams[0] + mDecoder.getWidth(), gifDrawParams[1] + mDecoder.getHeight());
+            canvas.drawBitmap(bitmap, null, mFrameRect, mFramePaint);
+        }
+    }
+
+    /**
+     * Draws a preview of the first frame, scaled up to the size of the gif.
+     */
+    private void drawPreview(Canvas canvas, Bitmap preview, float[] gifDrawParams) {
+        mFrameRect.set(gifDrawParams[0], gifDrawParams[1],
+                gifDrawParams[0] + mBitmap.getWidth(), gifDrawParams[1] + mBitmap.getHeight());
+        canvas.drawBitmap(preview, null, mFrameRect, mFramePaint);
+    }
+
+    /**
+     * Moves to the frame now due and invalidates only the part of the view it changes.
+     */
+    private void invalidateDueFrame() {
+        GifImageDecoder decoder = mDecoder;
+        if (!isPlaying || decoder == null || decoder.getFrameCount() <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int index = mIndex;
+        seekToTime(now);
+        if (mIndex == index) {
+            if (!mWaitingForFrame) {
+                GifFrameTicker.getInstance().scheduleFrame(mFrameCallback, mTime + decoder.getDelay(mIndex) - now);
+            }
+            return;
+        }
+        float[] params = mDrawParams;
+        if (params == null || !decoder.getDirtyRect(index, mIndex, mDirtyRect)) {
+            invalidate();
+            return;
+        }
+        // map the region of the gif to the view, as drawn by onDraw(), rounding outwards
+        float x = params[0];
+        float y = params[1];
+        float scaleY = params[2];
+        float scaleX = params[3];
+        invalidate((int) Math.floor((x + mDirtyRect.left) * scaleX) - 1,
+                (int) Math.floor((y + mDirtyRect.top) * scaleY) - 1,
+                (int) Math.ceil((x + mDirtyRect.right) * scaleX) + 1,
+                (int) Math.ceil((y + mDirtyRect.bottom) * scaleY) + 1);
+    }
+
+    /**
+     * Moves to the frame due at the given time, skipping the frames that should have been shown
+     * meanwhile (after a jank, a stall or a slow decode) so playback stays in sync with the clock.
+     */
+    private void seekToTime(long now) {
+        // set before reading the duration, so a frame decoded meanwhile still redraws the view
+        mWaitingForFrame = mDecodeStatus != DECODE_STATUS_DECODED;
+        long time = mDecoder.getFrameStartTime(mIndex) + now - mTime;
+        int duration = mDecoder.getDuration();
+        if (mDecodeStatus == DECODE_STATUS_DECODED) {
+            time %= duration;
+        } else if (time >= duration) {
+            // caught up with the decoder, show the next frame as soon as it is decoded
+            mIndex = mDecoder.getFrameCount() - 1;
+            mTime = now - mDecoder.getDelay(mIndex);
+            return;
+        }
+        mWaitingForFrame = false;
+        int index = mDecoder.getFrameIndexAt(time);
+        mTime = now - (time - mDecoder.getFrameStartTime(index));
+        if (index != mIndex) {
+            int frameCount = mDecoder.getFrameCount();
+            int droppedCount = (index - mIndex - 1 + frameCount) % frameCount;
+            mDecoder.getMetrics().onFrameShown(mDecoder, index, now - mTime, droppedCount);
+            mIndex = index;
+            prefetchFrames();
+        }
+    }
+
     private void incrementFrameIndex() {
         mIndex++;
         if (mIndex >= mDecoder.getFrameCount()) {
@@ -368,11 +820,13 @@ public class GifImageView extends ImageView {
 
     public void pause() {
         isPlaying = false;
+        GifFrameTicker.getInstance().cancel(mFrameCallback);
         invalidate();
     }
 
     public void stop() {
         isPlaying = false;
+        GifFrameTicker.getInstance().cancel(mFrameCallback);
         mIndex = 0;
         invalidate();
     }
@@ -402,6 +856,7 @@ public class GifImageView extends ImageView {
      * - 0 The x position of the gif
      * - 1 The y position of the gif
      * - 2 The scaling applied to the y-axis
+     * - 3 The scaling applied to the x-axis
      */
     private float[] applyScaleType(Canvas canvas) {
         // Get the current dimensions of the view and the gif
@@ -538,6 +993,6 @@ public class GifImageView extends ImageView {
                 break;
         }
 
-        return new float[]{x, y, s};
+        return new float[]{x, y, s, mScaleType == ScaleType.FIT_XY ? vWidth / gWidth : s};
     }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+package works.langley.gifimagedecodersample;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+/**
+ * Stream of a gif, read at most once: the bytes read are kept, so the gif can be decoded again,
+ * e.g. when a view is attached again after its decode was cancelled half way through the stream.
+ * A cancelled read is resumed by replaying the bytes already read before reading on from the stream.
+ */
+public class GifStreamSource {
+    private final InputStream mInputStream;
+    private ByteArrayOutputStream mBytesRead = new ByteArrayOutputStream();
+    private byte[] mData; // whole gif, once the stream has been read through
+    private volatile boolean mReading = false;
+    private volatile boolean mClosed = false;
+
+    /**
+     * @param inputStream stream of the gif, closed by this source
+     */
+    public GifStreamSource(InputStream inputStream) {
+        mInputStream = inputStream;
+    }
+
+    /**
+     * Reads the gif with the given decoder. Reads of the same source run one at a time.
+     *
+     * @param decoder new decoder
+     * @return read status code
+     */
+    public synchronized int read(GifImageDecoder decoder) throws IOException {
+        if (mData != null) {
+            return decoder.read(mData);
+        }
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        mReading = true;
+        try {
+            InputStream inputStream = new RecordingInputStream();
+            if (mBytesRead.size() > 0) {
+                inputStream = new SequenceInputStream(new ByteArrayInputStream(mBytesRead.toByteArray()), inputStream);
+            }
+            int status = decoder.read(inputStream);
+            if (status != GifImageDecoder.STATUS_CANCELLED) {
+                // read as far as the gif goes, the next reads start from the bytes
+                mData = mBytesRead.toByteArray();
+                mBytesRead = null;
+                closeStream();
+            }
+            return status;
+        } finally {
+            mReading = false;
+        }
+    }
+
+    /**
+     * Closes the stream unless it is being read, e.g. when the gif is decoded from another source.
+     * Reads started afterwards fail unless the whole gif was read before.
+     */
+    public void close() {
+        if (!mReading && !mClosed) {
+            closeStream();
+        }
+    }
+
+    private void closeStream() {
+        mClosed = true;
+        try {
+            mInputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads on from the stream, keeping the bytes read. Closing it leaves the stream open,
+     * so a cancelled read can be resumed.
+     */
+    private class RecordingInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            int b = mInputStream.read();
+            if (b >= 0) {
+                mBytesRead.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = mInputStream.read(buffer, offset, length);
+            if (read > 0) {
+                mBytesRead.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return mInputStream.available();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
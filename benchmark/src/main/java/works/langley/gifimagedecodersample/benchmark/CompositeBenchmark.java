@@ -0,0 +1,110 @@
+package works.langley.gifimagedecodersample.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import works.langley.gifimagedecodersample.GifCompositor;
+import works.langley.gifimagedecodersample.GifFrameDecoder;
+import works.langley.gifimagedecodersample.ImageBlock;
+
+/**
+ * Compositing of already decoded frames, with every frame using the same disposal method.
+ * {@link #mapAndComposite()} and {@link #mapIntoCanvas()} compare going through a frame buffer
+ * with mapping the color indices straight into the canvas.
+ * Run with "-prof gc": gc.alloc.rate.norm is then the number of bytes allocated per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeBenchmark {
+    @Param({GifCorpus.TRANSPARENT, GifCorpus.LARGE})
+    public String gif;
+
+    @Param({"0", "1", "2", "3"})
+    public int dispose;
+
+    private ParsedGif mParsedGif;
+    private GifCompositor mCompositor;
+    private int[][] mFrameColors;
+    private byte[][] mFramePixels; // color indices
+    private final GifFrameDecoder mFrameDecoder = new GifFrameDecoder();
+    private int[] mColors;
+    private short[] mRgb565;
+    private int mIndex = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        mParsedGif = new ParsedGif(GifCorpus.load(gif));
+        mCompositor = new GifCompositor(mParsedGif.header.getWidth(), mParsedGif.header.getHeight());
+        mFrameColors = new int[mParsedGif.getFrameCount()][];
+        mFramePixels = new byte[mParsedGif.getFrameCount()][];
+        for (int i = 0; i < mFrameColors.length; i++) {
+            ImageBlock imageBlock = mParsedGif.imageBlocks.get(i);
+            mFrameColors[i] = new int[imageBlock.getImageWidth() * imageBlock.getImageHeight()];
+            mFrameDecoder.decode(imageBlock, mParsedGif.getColorTable(i), mParsedGif.getTransparentIndex(i), mFrameColors[i]);
+            mFramePixels[i] = new byte[imageBlock.getImageWidth() * imageBlock.getImageHeight()];
+            mFrameDecoder.decodeIndices(imageBlock, mFramePixels[i]);
+        }
+        mColors = new int[mParsedGif.maxPixelCount];
+        mRgb565 = new short[mParsedGif.header.getWidth() * mParsedGif.header.getHeight()];
+    }
+
+    private int nextIndex() {
+        int index = mIndex;
+        mIndex = (mIndex + 1) % mFrameColors.length;
+        if (index == 0) {
+            mCompositor.reset();
+        }
+        return index;
+    }
+
+    @Benchmark
+    public int[] composite() {
+        int index = nextIndex();
+        ImageBlock imageBlock = mParsedGif.imageBlocks.get(index);
+        return mCompositor.composite(mFrameColors[index], imageBlock.ImageLeftPosition(), imageBlock.getImageTopPosition(),
+                imageBlock.getImageWidth(), imageBlock.getImageHeight(), dispose, mParsedGif.getTransparentIndex(index) >= 0);
+    }
+
+    @Benchmark
+    public int[] mapAndComposite() {
+        int index = nextIndex();
+        ImageBlock imageBlock = mParsedGif.imageBlocks.get(index);
+        int transparentIndex = mParsedGif.getTransparentIndex(index);
+        mFrameDecoder.mapColors(imageBlock, mFramePixels[index], mParsedGif.getColorTable(index), transparentIndex, 1, mColors);
+        return mCompositor.composite(mColors, imageBlock.ImageLeftPosition(), imageBlock.getImageTopPosition(),
+                imageBlock.getImageWidth(), imageBlock.getImageHeight(), dispose, transparentIndex >= 0);
+    }
+
+    @Benchmark
+    public int[] mapIntoCanvas() {
+        int index = nextIndex();
+        mFrameDecoder.mapColors(mParsedGif.imageBlocks.get(index), mFramePixels[index], mParsedGif.getColorTable(index),
+                mParsedGif.getTransparentIndex(index), 1, mCompositor, dispose);
+        return mCompositor.getPixels();
+    }
+
+    /**
+     * Packing the canvas for an RGB_565 bitmap.
+     */
+    @Benchmark
+    public short[] packRgb565() {
+        GifCompositor.packRgb565(mCompositor.getPixels(), mRgb565, mRgb565.length);
+        return mRgb565;
+    }
+}
@@ -0,0 +1,87 @@
+package works.langley.gifimagedecodersample.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import works.langley.gifimagedecodersample.ApplicationExtension;
+import works.langley.gifimagedecodersample.GifColorTables;
+import works.langley.gifimagedecodersample.GifFrameDecoder;
+import works.langley.gifimagedecodersample.GifHeader;
+import works.langley.gifimagedecodersample.GifParser;
+import works.langley.gifimagedecodersample.GraphicControlExtension;
+import works.langley.gifimagedecodersample.ImageBlock;
+
+/**
+ * Reading a whole file the way a new decoder does: parsing and decoding every frame as its block is read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileDecodeBenchmark {
+    @Param({GifCorpus.SMALL, GifCorpus.LARGE, GifCorpus.TRANSPARENT, GifCorpus.LOCAL, GifCorpus.INTERLACED})
+    public String gif;
+
+    private byte[] mData;
+
+    @Setup
+    public void setUp() throws IOException {
+        mData = GifCorpus.load(gif);
+    }
+
+    @Benchmark
+    public int decodeFile(final Blackhole blackhole) {
+        final GifFrameDecoder frameDecoder = new GifFrameDecoder();
+        return new GifParser().parse(ByteBuffer.wrap(mData), new GifParser.Listener() {
+            private final GifColorTables mColorTables = new GifColorTables();
+            private GraphicControlExtension mGcExt;
+            private int[] mColors = new int[0];
+
+            @Override
+            public boolean onHeader(GifHeader header) {
+                mColorTables.readGlobalColorTable(header);
+                return true;
+            }
+
+            @Override
+            public void onGraphicControlExtension(GraphicControlExtension gcExt) {
+                mGcExt = gcExt;
+            }
+
+            @Override
+            public void onApplicationExtension(ApplicationExtension appExt) {
+            }
+
+            @Override
+            public void onImageBlock(ImageBlock imageBlock) {
+                int pixelCount = imageBlock.getImageWidth() * imageBlock.getImageHeight();
+                if (mColors.length < pixelCount) {
+                    mColors = new int[pixelCount];
+                }
+                int[] colorTable = mColorTables.getColorTable(imageBlock);
+                int transparentIndex = -1;
+                if (mGcExt != null && mGcExt.getTransparentColorFlag() != 0) {
+                    transparentIndex = mGcExt.getTransparentColorIndex();
+                }
+                blackhole.consume(frameDecoder.decode(imageBlock, colorTable, transparentIndex, mColors));
+                mGcExt = null;
+            }
+        });
+    }
+}
@@ -0,0 +1,81 @@
+package works.langley.gifimagedecodersample.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import works.langley.gifimagedecodersample.GifFrameDecoder;
+import works.langley.gifimagedecodersample.GifLzwDecoder;
+import works.langley.gifimagedecodersample.ImageBlock;
+
+/**
+ * Decoding of a single frame, cycling through the frames of the file.
+ * Run with "-prof gc": gc.alloc.rate.norm is then the number of bytes allocated per frame.
+ * sampleSize only applies to {@link #frame()}, run "-p sampleSize=1" for the LZW decoding alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDecodeBenchmark {
+    @Param({GifCorpus.SMALL, GifCorpus.LARGE, GifCorpus.TRANSPARENT, GifCorpus.LOCAL, GifCorpus.INTERLACED})
+    public String gif;
+
+    @Param({"1", "2", "4"})
+    public int sampleSize;
+
+    private ParsedGif mParsedGif;
+    private final GifLzwDecoder mLzwDecoder = new GifLzwDecoder();
+    private final GifFrameDecoder mFrameDecoder = new GifFrameDecoder();
+    private byte[] mPixels;
+    private int[] mColors;
+    private int mIndex = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        mParsedGif = new ParsedGif(GifCorpus.load(gif));
+        mPixels = new byte[mParsedGif.maxPixelCount];
+        mColors = new int[mParsedGif.maxPixelCount];
+    }
+
+    private int nextIndex() {
+        int index = mIndex;
+        mIndex = (mIndex + 1) % mParsedGif.getFrameCount();
+        return index;
+    }
+
+    /**
+     * LZW decoding of the color indices only.
+     */
+    @Benchmark
+    public int lzw() {
+        ImageBlock imageBlock = mParsedGif.imageBlocks.get(nextIndex());
+        return mLzwDecoder.decode(imageBlock.buffer, imageBlock.offset + imageBlock.getImageDataOffset(),
+                imageBlock.getLZWMinimumCodeSize(), mPixels, imageBlock.getImageWidth() * imageBlock.getImageHeight());
+    }
+
+    /**
+     * LZW decoding, color table lookup, transparency and interlacing, as done for every frame shown,
+     * subsampled as for a gif displayed at 1/sampleSize of its size.
+     */
+    @Benchmark
+    public int[] frame() {
+        int index = nextIndex();
+        mFrameDecoder.decode(mParsedGif.imageBlocks.get(index), mParsedGif.getColorTable(index),
+                mParsedGif.getTransparentIndex(index), sampleSize, mColors);
+        return mColors;
+    }
+}
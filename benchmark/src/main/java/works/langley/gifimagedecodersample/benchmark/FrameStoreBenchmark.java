@@ -0,0 +1,83 @@
+package works.langley.gifimagedecodersample.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import works.langley.gifimagedecodersample.GifColorTables;
+import works.langley.gifimagedecodersample.GifCompositor;
+import works.langley.gifimagedecodersample.GifFrameDecoder;
+import works.langley.gifimagedecodersample.GifFrameStore;
+import works.langley.gifimagedecodersample.ImageBlock;
+
+/**
+ * Expanding frames from a {@link GifFrameStore} in playing order, to compare with
+ * {@link FrameDecodeBenchmark#frame()} plus {@link CompositeBenchmark#composite()}.
+ * The compression ratio of the file is printed when set up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameStoreBenchmark {
+    @Param({GifCorpus.SMALL, GifCorpus.LARGE, GifCorpus.TRANSPARENT, GifCorpus.INTERLACED})
+    public String gif;
+
+    private GifFrameStore mFrameStore;
+    private int mFrameCount;
+    private byte[] mIndices;
+    private int mIndex = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        ParsedGif parsedGif = new ParsedGif(GifCorpus.load(gif));
+        int width = parsedGif.header.getWidth();
+        int height = parsedGif.header.getHeight();
+        mFrameCount = parsedGif.getFrameCount();
+        mIndices = new byte[width * height];
+        mFrameStore = new GifFrameStore(width * height, Integer.MAX_VALUE);
+
+        // composite the indices themselves, transparent pixels share index 0
+        int[] indexTable = new int[GifColorTables.LOOKUP_TABLE_LENGTH];
+        for (int i = 0; i < indexTable.length; i++) {
+            indexTable[i] = 0xFF000000 | i;
+        }
+        GifFrameDecoder frameDecoder = new GifFrameDecoder();
+        GifCompositor compositor = new GifCompositor(width, height);
+        int[] colors = new int[parsedGif.maxPixelCount];
+        for (int i = 0; i < mFrameCount; i++) {
+            ImageBlock imageBlock = parsedGif.imageBlocks.get(i);
+            int transparentIndex = parsedGif.getTransparentIndex(i);
+            frameDecoder.decode(imageBlock, indexTable, transparentIndex, colors);
+            int dispose = parsedGif.gcExts.get(i) != null ? parsedGif.gcExts.get(i).getDisposalMothod() : 0;
+            int[] canvas = compositor.composite(colors, imageBlock.ImageLeftPosition(), imageBlock.getImageTopPosition(),
+                    imageBlock.getImageWidth(), imageBlock.getImageHeight(), dispose, transparentIndex >= 0);
+            for (int p = 0; p < mIndices.length; p++) {
+                mIndices[p] = (byte) canvas[p];
+            }
+            mFrameStore.put(i, mIndices);
+        }
+        System.out.println(gif + ": compression ratio " + mFrameStore.getCompressionRatio());
+    }
+
+    @Benchmark
+    public byte[] expand() {
+        int index = mIndex;
+        mIndex = (mIndex + 1) % mFrameCount;
+        mFrameStore.expand(index, mIndices);
+        return mIndices;
+    }
+}
@@ -0,0 +1,174 @@
+package works.langley.gifimagedecodersample.benchmark;
+
+import org.w3c.dom.Node;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * GIF files the benchmarks run over.
+ * <p/>
+ * Synthetic files are generated with ImageIO from a fixed seed, so every run measures the same bytes:
+ * <ul>
+ * <li>small: 64x64, 10 full frames, global color table</li>
+ * <li>large: 480x360, 10 full frames, global color table</li>
+ * <li>transparent: 240x240, partial frames with a transparent color, cycling through every disposal method</li>
+ * <li>local: 240x240, 10 full frames, each with its own color table</li>
+ * <li>interlaced: 240x240, 10 full interlaced frames</li>
+ * </ul>
+ * Real files are given as "file:/path/to/file.gif".
+ */
+public final class GifCorpus {
+    private static final String TAG = GifCorpus.class.getSimpleName();
+
+    public static final String SMALL = "small";
+    public static final String LARGE = "large";
+    public static final String TRANSPARENT = "transparent";
+    public static final String LOCAL = "local";
+    public static final String INTERLACED = "interlaced";
+
+    private static final String FILE_PREFIX = "file:";
+    private static final String METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String[] DISPOSAL_METHODS = {"none", "doNotDispose", "restoreToBackgroundColor", "restoreToPrevious"};
+    private static final long SEED = 42;
+
+    private GifCorpus() {
+    }
+
+    /**
+     * Gets the bytes of a GIF file of the corpus.
+     *
+     * @param name name of a synthetic file, or "file:" followed by the path of a real one
+     * @return GIF file
+     */
+    public static byte[] load(String name) throws IOException {
+        if (name.startsWith(FILE_PREFIX)) {
+            return readFile(new File(name.substring(FILE_PREFIX.length())));
+        }
+        if (SMALL.equals(name)) {
+            return generate(64, 64, 10, false, false, false);
+        } else if (LARGE.equals(name)) {
+            return generate(480, 360, 10, false, false, false);
+        } else if (TRANSPARENT.equals(name)) {
+            return generate(240, 240, 12, true, false, false);
+        } else if (LOCAL.equals(name)) {
+            return generate(240, 240, 10, false, true, false);
+        } else if (INTERLACED.equals(name)) {
+            return generate(240, 240, 10, false, false, true);
+        }
+        throw new IllegalArgumentException("Unknown gif: " + name);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+            }
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Generates an animated GIF. Frames are gradients with some noise, which compress
+     * about as well as typical animations.
+     */
+    private static byte[] generate(int width, int height, int frameCount,
+                                   boolean transparent, boolean localColorTables, boolean interlaced) throws IOException {
+        Random random = new Random(SEED);
+        IndexColorModel globalColorModel = createColorModel(random);
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ImageOutputStream ios = ImageIO.createImageOutputStream(os);
+        try {
+            writer.setOutput(ios);
+            writer.prepareWriteSequence(null);
+            for (int f = 0; f < frameCount; f++) {
+                int frameWidth = width;
+                int frameHeight = height;
+                int left = 0;
+                int top = 0;
+                if (transparent && f > 0) {
+                    // a moving rectangle over the first frame
+                    frameWidth = width / 2;
+                    frameHeight = height / 2;
+                    left = (f * width / frameCount) % (width - frameWidth);
+                    top = (f * height / frameCount) % (height - frameHeight);
+                }
+                IndexColorModel colorModel = localColorTables ? createColorModel(random) : globalColorModel;
+                BufferedImage image = new BufferedImage(frameWidth, frameHeight, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+                WritableRaster raster = image.getRaster();
+                for (int y = 0; y < frameHeight; y++) {
+                    for (int x = 0; x < frameWidth; x++) {
+                        int index = random.nextInt(8) == 0 ? random.nextInt(256) : ((x + y) / 4 + f * 8) & 0xFF;
+                        raster.setSample(x, y, 0, index);
+                    }
+                }
+
+                IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), null);
+                IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(METADATA_FORMAT);
+                IIOMetadataNode descriptor = getChild(root, "ImageDescriptor");
+                descriptor.setAttribute("imageLeftPosition", String.valueOf(left));
+                descriptor.setAttribute("imageTopPosition", String.valueOf(top));
+                descriptor.setAttribute("imageWidth", String.valueOf(frameWidth));
+                descriptor.setAttribute("imageHeight", String.valueOf(frameHeight));
+                descriptor.setAttribute("interlaceFlag", interlaced ? "TRUE" : "FALSE");
+                IIOMetadataNode gcExt = getChild(root, "GraphicControlExtension");
+                gcExt.setAttribute("disposalMethod", DISPOSAL_METHODS[transparent ? f % DISPOSAL_METHODS.length : 1]);
+                gcExt.setAttribute("userInputFlag", "FALSE");
+                gcExt.setAttribute("transparentColorFlag", transparent ? "TRUE" : "FALSE");
+                gcExt.setAttribute("transparentColorIndex", "0");
+                gcExt.setAttribute("delayTime", "5");
+                metadata.setFromTree(METADATA_FORMAT, root);
+                writer.writeToSequence(new IIOImage(image, null, metadata), null);
+            }
+            writer.endWriteSequence();
+        } finally {
+            ios.close();
+            writer.dispose();
+        }
+        return os.toByteArray();
+    }
+
+    private static IndexColorModel createColorModel(Random random) {
+        byte[] r = new byte[256];
+        byte[] g = new byte[256];
+        byte[] b = new byte[256];
+        random.nextBytes(r);
+        random.nextBytes(g);
+        random.nextBytes(b);
+        return new IndexColorModel(8, 256, r, g, b);
+    }
+
+    private static IIOMetadataNode getChild(IIOMetadataNode root, String name) {
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeName().equals(name)) {
+                return (IIOMetadataNode) node;
+            }
+        }
+        IIOMetadataNode child = new IIOMetadataNode(name);
+        root.appendChild(child);
+        return child;
+    }
+}
@@ -0,0 +1,108 @@
+package works.langley.gifimagedecodersample.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import works.langley.gifimagedecodersample.ApplicationExtension;
+import works.langley.gifimagedecodersample.GifHeader;
+import works.langley.gifimagedecodersample.GifMetadata;
+import works.langley.gifimagedecodersample.GifParser;
+import works.langley.gifimagedecodersample.GraphicControlExtension;
+import works.langley.gifimagedecodersample.ImageBlock;
+
+/**
+ * Header and block parsing, without decoding the image data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({GifCorpus.SMALL, GifCorpus.LARGE, GifCorpus.TRANSPARENT, GifCorpus.LOCAL})
+    public String gif;
+
+    private byte[] mData;
+
+    @Setup
+    public void setUp() throws IOException {
+        mData = GifCorpus.load(gif);
+    }
+
+    /**
+     * Blocks indexed in place, as done for byte arrays and memory-mapped files.
+     */
+    @Benchmark
+    public int parseBuffer(Blackhole blackhole) {
+        return new GifParser().parse(ByteBuffer.wrap(mData), new BlackholeListener(blackhole));
+    }
+
+    /**
+     * Blocks read off a stream, as done for resources and streams.
+     */
+    @Benchmark
+    public int parseStream(Blackhole blackhole) throws IOException {
+        return new GifParser().parse(new ByteArrayInputStream(mData), new BlackholeListener(blackhole));
+    }
+
+    /**
+     * Metadata only, as read by {@link GifMetadata#probe(ByteBuffer)}.
+     */
+    @Benchmark
+    public GifMetadata probeBuffer() {
+        return GifMetadata.probe(ByteBuffer.wrap(mData));
+    }
+
+    /**
+     * Metadata only, image data skipped off the stream.
+     */
+    @Benchmark
+    public GifMetadata probeStream() throws IOException {
+        return GifMetadata.probe(new ByteArrayInputStream(mData));
+    }
+
+    private static class BlackholeListener implements GifParser.Listener {
+        private final Blackhole mBlackhole;
+
+        private BlackholeListener(Blackhole blackhole) {
+            mBlackhole = blackhole;
+        }
+
+        @Override
+        public boolean onHeader(GifHeader header) {
+            mBlackhole.consume(header);
+            return true;
+        }
+
+        @Override
+        public void onGraphicControlExtension(GraphicControlExtension gcExt) {
+            mBlackhole.consume(gcExt);
+        }
+
+        @Override
+        public void onApplicationExtension(ApplicationExtension appExt) {
+            mBlackhole.consume(appExt);
+        }
+
+        @Override
+        public void onImageBlock(ImageBlock imageBlock) {
+            mBlackhole.consume(imageBlock);
+        }
+    }
+}
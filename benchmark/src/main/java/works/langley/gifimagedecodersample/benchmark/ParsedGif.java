@@ -0,0 +1,72 @@
+package works.langley.gifimagedecodersample.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import works.langley.gifimagedecodersample.ApplicationExtension;
+import works.langley.gifimagedecodersample.GifColorTables;
+import works.langley.gifimagedecodersample.GifHeader;
+import works.langley.gifimagedecodersample.GifParser;
+import works.langley.gifimagedecodersample.GraphicControlExtension;
+import works.langley.gifimagedecodersample.ImageBlock;
+
+/**
+ * Blocks of a GIF file, parsed once so frames can be decoded in isolation.
+ */
+public class ParsedGif implements GifParser.Listener {
+    public GifHeader header;
+    public final GifColorTables colorTables = new GifColorTables();
+    public final ArrayList<ImageBlock> imageBlocks = new ArrayList<ImageBlock>();
+    public final ArrayList<GraphicControlExtension> gcExts = new ArrayList<GraphicControlExtension>();
+    public int maxPixelCount;
+
+    private GraphicControlExtension mGcExt;
+
+    public ParsedGif(byte[] data) {
+        int status = new GifParser().parse(ByteBuffer.wrap(data), this);
+        if (status != GifParser.STATUS_OK) {
+            throw new IllegalArgumentException("Unreadable gif, status " + status);
+        }
+    }
+
+    @Override
+    public boolean onHeader(GifHeader header) {
+        this.header = header;
+        colorTables.readGlobalColorTable(header);
+        return true;
+    }
+
+    @Override
+    public void onGraphicControlExtension(GraphicControlExtension gcExt) {
+        mGcExt = gcExt;
+    }
+
+    @Override
+    public void onApplicationExtension(ApplicationExtension appExt) {
+    }
+
+    @Override
+    public void onImageBlock(ImageBlock imageBlock) {
+        imageBlocks.add(imageBlock);
+        gcExts.add(mGcExt);
+        mGcExt = null;
+        maxPixelCount = Math.max(maxPixelCount, imageBlock.getImageWidth() * imageBlock.getImageHeight());
+    }
+
+    public int getFrameCount() {
+        return imageBlocks.size();
+    }
+
+    public int[] getColorTable(int index) {
+        ImageBlock imageBlock = imageBlocks.get(index);
+        return colorTables.getColorTable(imageBlock);
+    }
+
+    public int getTransparentIndex(int index) {
+        GraphicControlExtension gcExt = gcExts.get(index);
+        if (gcExt == null || gcExt.getTransparentColorFlag() == 0) {
+            return -1;
+        }
+        return gcExt.getTransparentColorIndex();
+    }
+}
@@ -0,0 +1,54 @@
+package works.langley.gifimagedecodersample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Application extension: application identifier, authentication code and application data,
+ * e.g. the loop count of the NETSCAPE2.0 extension.
+ */
+public class ApplicationExtension extends GifBlock {
+
+    public ApplicationExtension(ByteBuffer buffer, int offset) {
+        super(buffer, offset);
+        //get size
+        size = skipSubBlocks(buffer, offset + 0x0E) - offset;
+    }
+
+    public int getExtensionIntroducer() {
+        return getByte(0);
+    }
+
+    public int getExtensionLabel() {
+        return getByte(1);
+    }
+
+    public int getBlockSize() {
+        return getByte(2);
+    }
+
+    public String getApplicationIdentifier() {
+        return getString(3, 8);
+    }
+
+    public String getAuthenticationCode() {
+        return getString(11, 3);
+    }
+
+    /**
+     * Whether this is the NETSCAPE2.0 extension (or its ANIMEXTS1.0 twin) holding the loop count.
+     */
+    public boolean isLoopingExtension() {
+        String identifier = getApplicationIdentifier() + getAuthenticationCode();
+        return (identifier.equals("NETSCAPE2.0") || identifier.equals("ANIMEXTS1.0"))
+                && getByte(0x0E) >= 3 && getByte(0x0F) == 1;
+    }
+
+    /**
+     * Gets the number of times the animation is repeated.
+     *
+     * @return loop count, 0 to repeat forever, or -1 unless {@link #isLoopingExtension()}
+     */
+    public int getLoopCount() {
+        return isLoopingExtension() ? getShort(0x10) : -1;
+    }
+}
@@ -0,0 +1,100 @@
+package works.langley.gifimagedecodersample;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Block of a GIF file, read in place from the source buffer.
+ */
+public class GifBlock {
+    public final ByteBuffer buffer;
+    public final int offset;
+    public int size;
+
+    public GifBlock(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    /**
+     * Skips data sub-blocks.
+     *
+     * @param buffer   buffer containing the sub-blocks
+     * @param position position of the first sub-block
+     * @return position following the block terminator
+     */
+    public static int skipSubBlocks(ByteBuffer buffer, int position) {
+        int blockSize = buffer.get(position) & 0xFF;
+        position += 1;
+        while (blockSize != 0x00) {
+            position += blockSize;
+            blockSize = buffer.get(position) & 0xFF;
+            position += 1;
+        }
+        return position;
+    }
+
+    protected int getByte(int index) {
+        return buffer.get(offset + index) & 0xFF;
+    }
+
+    protected int getShort(int index) {
+        return getByte(index) + (getByte(index + 1) << 8);
+    }
+
+    protected String getString(int index, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) getByte(index + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Gets the number of colors of a color table.
+     *
+     * @param sizeField size of the color table, as stored in the block
+     * @return number of colors, 2 to 256
+     */
+    protected static int getColorTableLength(int sizeField) {
+        return 2 << sizeField;
+    }
+
+    /**
+     * Reads a color table into a 256 entry ARGB lookup table. Colors are opaque,
+     * entries past the end of the table are transparent.
+     */
+    protected void readColorTable(int index, int length, int[] colors) {
+        int position = offset + index;
+        for (int i = 0; i < length; i++, position += 3) {
+            colors[i] = 0xFF000000 | (buffer.get(position) & 0xFF) << 16
+                    | (buffer.get(position + 1) & 0xFF) << 8 | buffer.get(position + 2) & 0xFF;
+        }
+        Arrays.fill(colors, length, colors.length, 0);
+    }
+
+    protected int hashColorTable(int index, int length) {
+        int hash = length;
+        int end = offset + index + length * 3;
+        for (int position = offset + index; position < end; position++) {
+            hash = 31 * hash + buffer.get(position);
+        }
+        return hash;
+    }
+
+    /**
+     * Whether a lookup table was read from a color table with the same colors.
+     */
+    protected boolean colorTableEquals(int index, int length, int[] colors) {
+        int position = offset + index;
+        for (int i = 0; i < length; i++, position += 3) {
+            int color = 0xFF000000 | (buffer.get(position) & 0xFF) << 16
+                    | (buffer.get(position + 1) & 0xFF) << 8 | buffer.get(position + 2) & 0xFF;
+            if (colors[i] != color) {
+                return false;
+            }
+        }
+        // and not from a longer one
+        return length == colors.length || colors[length] == 0;
+    }
+}
@@ -0,0 +1,82 @@
+package works.langley.gifimagedecodersample;
+
+/**
+ * Color tables of a GIF file, each read once into a 256 entry ARGB lookup table that
+ * {@link GifFrameDecoder} indexes directly. Frames with identical local color tables,
+ * found by a hash of their contents, share a single lookup table.
+ */
+public class GifColorTables {
+    public static final int LOOKUP_TABLE_LENGTH = 256;
+
+    private final int[] mGlobalColorTable = new int[LOOKUP_TABLE_LENGTH];
+    private int mGlobalColorTableLength;
+
+    // local color tables read so far, by hash
+    private int[] mLocalHashes = new int[4];
+    private int[][] mLocalColorTables = new int[4][];
+    private int mLocalCount;
+
+    /**
+     * Reads the global color table of a file, and forgets the local color tables of the previous one.
+     *
+     * @param header header of the file
+     */
+    public void readGlobalColorTable(GifHeader header) {
+        header.readGlobalColorTable(mGlobalColorTable);
+        mGlobalColorTableLength = header.getGlobalColorTableLength();
+        for (int i = 0; i < mLocalCount; i++) {
+            mLocalColorTables[i] = null;
+        }
+        mLocalCount = 0;
+    }
+
+    /**
+     * @return lookup table of the global color table, all transparent if there is none
+     */
+    public int[] getGlobalColorTable() {
+        return mGlobalColorTable;
+    }
+
+    public int getGlobalColorTableLength() {
+        return mGlobalColorTableLength;
+    }
+
+    /**
+     * Gets the lookup table of the colors of a frame: its local color table, or else the global one.
+     *
+     * @param imageBlock image block of the frame
+     * @return lookup table, 256 long, not to be modified
+     */
+    public int[] getColorTable(ImageBlock imageBlock) {
+        if (imageBlock.getLocalColorTableFlag() == 0) {
+            return mGlobalColorTable;
+        }
+        int hash = imageBlock.hashLocalColorTable();
+        for (int i = 0; i < mLocalCount; i++) {
+            if (mLocalHashes[i] == hash && imageBlock.localColorTableEquals(mLocalColorTables[i])) {
+                return mLocalColorTables[i];
+            }
+        }
+        if (mLocalCount == mLocalHashes.length) {
+            int[] hashes = new int[mLocalCount * 2];
+            System.arraycopy(mLocalHashes, 0, hashes, 0, mLocalCount);
+            mLocalHashes = hashes;
+            int[][] colorTables = new int[mLocalCount * 2][];
+            System.arraycopy(mLocalColorTables, 0, colorTables, 0, mLocalCount);
+            mLocalColorTables = colorTables;
+        }
+        int[] colors = new int[LOOKUP_TABLE_LENGTH];
+        imageBlock.readLocalColorTable(colors);
+        mLocalHashes[mLocalCount] = hash;
+        mLocalColorTables[mLocalCount] = colors;
+        mLocalCount++;
+        return colors;
+    }
+
+    /**
+     * @return number of distinct local color tables read from the file
+     */
+    public int getLocalColorTableCount() {
+        return mLocalCount;
+    }
+}
@@ -0,0 +1,178 @@
+package works.langley.gifimagedecodersample;
+
+import java.util.Arrays;
+
+/**
+ * Composites the frames of a GIF file, in order, over a single reusable ARGB canvas,
+ * applying the disposal method of each frame to its rectangle:
+ * <ul>
+ * <li>0 (unspecified) and 1 (do not dispose): the frame is left in place</li>
+ * <li>2 (restore to background): the rectangle is cleared to transparent</li>
+ * <li>3 (restore to previous): the rectangle is restored to what it was before the frame,
+ * saved beforehand in a save-area the size of the rectangle</li>
+ * </ul>
+ */
+public class GifCompositor {
+    // Disposal methods
+    public static final int DISPOSE_UNSPECIFIED = 0;
+    public static final int DISPOSE_NONE = 1;
+    public static final int DISPOSE_BACKGROUND = 2;
+    public static final int DISPOSE_PREVIOUS = 3;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mCanvas;
+    private int[] mSaveArea = new int[0]; // pixels under the previous frame, for DISPOSE_PREVIOUS
+
+    // disposal pending from the previous frame, applied before the next one is drawn
+    private int mDispose = DISPOSE_UNSPECIFIED;
+    private int mDisposeLeft;
+    private int mDisposeTop;
+    private int mDisposeWidth;
+    private int mDisposeHeight;
+
+    /**
+     * @param width  width of the logical screen
+     * @param height height of the logical screen
+     */
+    public GifCompositor(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mCanvas = new int[width * height];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Gets the canvas, holding the last composited frame.
+     *
+     * @return ARGB pixels, width * height long
+     */
+    public int[] getPixels() {
+        return mCanvas;
+    }
+
+    /**
+     * Clears the canvas to transparent, to composite the frames again from the first one.
+     */
+    public void reset() {
+        Arrays.fill(mCanvas, 0);
+        mDispose = DISPOSE_UNSPECIFIED;
+    }
+
+    /**
+     * Disposes of the previous frame, then draws a frame over the canvas.
+     *
+     * @param colors      ARGB colors of the frame, 0 for transparent pixels
+     * @param left        left position of the frame
+     * @param top         top position of the frame
+     * @param width       width of the frame
+     * @param height      height of the frame
+     * @param dispose     disposal method of the frame, applied before the next frame is drawn
+     * @param transparent whether the frame has transparent pixels
+     * @return canvas
+     */
+    public int[] composite(int[] colors, int left, int top, int width, int height, int dispose, boolean transparent) {
+        beginFrame(left, top, width, height, dispose);
+        int x0 = mDisposeLeft;
+        int y0 = mDisposeTop;
+        int w = mDisposeWidth;
+        int h = mDisposeHeight;
+        for (int y = 0; y < h; y++) {
+            int src = (y0 - top + y) * width + (x0 - left);
+            int dest = (y0 + y) * mWidth + x0;
+            if (!transparent) {
+                System.arraycopy(colors, src, mCanvas, dest, w);
+            } else {
+                for (int x = 0; x < w; x++) {
+                    int color = colors[src + x];
+                    if (color != 0) {
+                        mCanvas[dest + x] = color;
+                    }
+                }
+            }
+        }
+        return mCanvas;
+    }
+
+    /**
+     * Disposes of the previous frame and saves what a frame is about to cover if needed, for the
+     * frame to be drawn straight into the canvas afterwards, clipped to it.
+     *
+     * @param left    left position of the frame
+     * @param top     top position of the frame
+     * @param width   width of the frame
+     * @param height  height of the frame
+     * @param dispose disposal method of the frame, applied before the next frame is drawn
+     * @return canvas
+     */
+    public int[] beginFrame(int left, int top, int width, int height, int dispose) {
+        applyDisposal();
+
+        // clip the frame to the canvas
+        int x0 = Math.max(0, left);
+        int y0 = Math.max(0, top);
+        int x1 = Math.min(mWidth, left + width);
+        int y1 = Math.min(mHeight, top + height);
+        int w = Math.max(0, x1 - x0);
+        int h = Math.max(0, y1 - y0);
+        if (w == 0 || h == 0) {
+            // frame outside the canvas, its rows would start past the end of it
+            w = 0;
+            h = 0;
+        }
+
+        if (dispose == DISPOSE_PREVIOUS && w > 0 && h > 0) {
+            if (mSaveArea.length < w * h) {
+                mSaveArea = new int[w * h];
+            }
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(mCanvas, (y0 + y) * mWidth + x0, mSaveArea, y * w, w);
+            }
+        }
+
+        mDispose = dispose;
+        mDisposeLeft = x0;
+        mDisposeTop = y0;
+        mDisposeWidth = w;
+        mDisposeHeight = h;
+        return mCanvas;
+    }
+
+    /**
+     * Packs ARGB colors as RGB_565, dropping the alpha and the low bits of each component.
+     *
+     * @param colors ARGB colors
+     * @param rgb565 receives the packed colors
+     * @param length number of colors
+     */
+    public static void packRgb565(int[] colors, short[] rgb565, int length) {
+        for (int i = 0; i < length; i++) {
+            rgb565[i] = toRgb565(colors[i]);
+        }
+    }
+
+    public static short toRgb565(int color) {
+        return (short) (((color >> 8) & 0xF800) | ((color >> 5) & 0x07E0) | ((color >> 3) & 0x001F));
+    }
+
+    private void applyDisposal() {
+        if (mDispose == DISPOSE_BACKGROUND) {
+            for (int y = 0; y < mDisposeHeight; y++) {
+                int dest = (mDisposeTop + y) * mWidth + mDisposeLeft;
+                Arrays.fill(mCanvas, dest, dest + mDisposeWidth, 0);
+            }
+        } else if (mDispose == DISPOSE_PREVIOUS) {
+            for (int y = 0; y < mDisposeHeight; y++) {
+                System.arraycopy(mSaveArea, y * mDisposeWidth, mCanvas, (mDisposeTop + y) * mWidth + mDisposeLeft, mDisposeWidth);
+            }
+        }
+        mDispose = DISPOSE_UNSPECIFIED;
+    }
+}
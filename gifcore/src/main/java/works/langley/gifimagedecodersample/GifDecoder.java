@@ -0,0 +1,874 @@
+package works.langley.gifimagedecodersample;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes the frames of a GIF file into ARGB pixel buffers.
+ * <p/>
+ * By default reading only indexes the frames, {@link #getFramePixels(int)} then decodes and
+ * composites them on demand, from the last frame that does not depend on the previous ones, so
+ * frames read in order are each decoded once. getFramePixels() can then be called on another
+ * thread while the file is read, for the frames read so far. With
+ * {@link #setDecodeWhileReading(boolean)}, frames are composited as they are read instead, and
+ * subclasses get each one from {@link #onFrameRead(int)}. Frames are composited while holding the
+ * lock of the decoder, and the next one overwrites the pixels returned, so other threads must
+ * copy them while holding it too.
+ * <p/>
+ * GifImageDecoder extends it with bitmaps on Android.
+ */
+public class GifDecoder {
+    // File read status: No errors.
+    public static final int STATUS_OK = GifParser.STATUS_OK;
+    // File read status: Error decoding file (may be partially decoded)
+    public static final int STATUS_FORMAT_ERROR = GifParser.STATUS_FORMAT_ERROR;
+    // File read status: Unable to open source.
+    public static final int STATUS_OPEN_ERROR = GifParser.STATUS_OPEN_ERROR;
+    // File read status: Reading cancelled with cancel().
+    public static final int STATUS_CANCELLED = GifParser.STATUS_CANCELLED;
+
+    private static final int MIN_DELAY = 100;
+    private static final int MIN_DELAY_ENFORCE_THRESHOLD = 20;
+    // frames decoded in parallel ahead of the frame being composited, at most
+    private static final int MAX_PENDING_FRAMES = 2 * Runtime.getRuntime().availableProcessors();
+    // interlace passes previewed, the first showing 1 row in 8, the second 1 row in 4
+    private static final int PREVIEW_PASSES = 2;
+    // smaller first frames are read too quickly for a preview to be worth it
+    private static final int PREVIEW_MIN_PIXELS = 256 * 256;
+
+    // decoders of the threads decoding frames in parallel
+    private static final ThreadLocal<GifFrameDecoder> sFrameDecoders = new ThreadLocal<GifFrameDecoder>() {
+        @Override
+        protected GifFrameDecoder initialValue() {
+            return new GifFrameDecoder();
+        }
+    };
+
+    private int mStatus;
+    private int mWidth;
+    private int mHeight;
+    private int mImageWidth; // width of the decoded frames, subsampled
+    private int mImageHeight; // height of the decoded frames, subsampled
+    private int mRequestedSampleSize = 1;
+    private int mTargetWidth;
+    private int mTargetHeight;
+    private int mSampleSize = 1; // subsampling of the file being read
+    private final ArrayList<Frame> mFrames = new ArrayList<Frame>(); // frames read, counted or not yet
+    private int mFrameCount; // frames counted, that can be retrieved
+    private int[] mFrameEndTimes = new int[16]; // end of each frame since the start of the animation, in milliseconds
+    private int mLoopCount = GifMetadata.LOOP_NONE;
+    private int mDecodedIndex = -1; // index of the frame on the canvas
+    private boolean mCanvasOpaque; // no transparent pixel is left once the previous frame is disposed of
+
+    private boolean mDecodeWhileReading = false;
+    private boolean mKeepBlocks; // image blocks stay valid once read, so frames can be decoded again
+    private ExecutorService mDecodeExecutor;
+    private final ArrayList<byte[]> mIndexBuffers = new ArrayList<byte[]>(); // color indices of frames composited
+    private boolean mPreviewFirstFrame = false;
+    private int mPreviewPasses; // interlace passes of the first frame previewed so far
+    private int[] mPreviewPixels;
+    private GifMetrics mMetrics; // null for the default metrics
+    private long mReadStartNanos;
+
+    private final GifParser mParser = new GifParser();
+    private final GifColorTables mColorTables = new GifColorTables();
+    private final GifFrameDecoder mFrameDecoder = new GifFrameDecoder();
+    private GraphicControlExtension mGcExt; // of the next image block
+    private byte[] mPixels; // color indices of the frame being composited
+    private GifCompositor mCompositor; // frames composited so far
+
+    private static class Frame {
+        public ImageBlock imageBlock; // null once composited if the block is not kept
+        public GraphicControlExtension gcExt;
+        public int dispose;
+        public int delay; // display delay in milliseconds
+        public final int[] rect = new int[4]; // left, top, right and bottom, clipped to the canvas
+        public final int[] dirtyRect = new int[4]; // region that can differ from the previous frame
+        // covers the whole canvas without transparency and is not restored to the previous frame,
+        // so neither it nor the following frames depend on the frames before it
+        public boolean keyFrame;
+        public boolean opaque; // neither this frame nor the previous ones have transparent pixels once composited
+        // color indices decoded in parallel, until the frame is composited
+        public byte[] pixels;
+        public Future<Boolean> decodeTask;
+        public long decodeTimeNanos; // time taken to decode the color indices
+    }
+
+    private final GifParser.Listener mParserListener = new GifParser.Listener() {
+        @Override
+        public boolean onHeader(GifHeader header) {
+            return readHeader(header);
+        }
+
+        @Override
+        public void onGraphicControlExtension(GraphicControlExtension gcExt) {
+            mGcExt = gcExt;
+        }
+
+        @Override
+        public void onApplicationExtension(ApplicationExtension appExt) {
+            if (appExt.isLoopingExtension()) {
+                mLoopCount = appExt.getLoopCount();
+            }
+        }
+
+        @Override
+        public void onImageBlock(ImageBlock imageBlock) {
+            readImageBlock(imageBlock);
+        }
+    };
+
+    private final GifParser.ProgressListener mProgressListener = new GifParser.ProgressListener() {
+        @Override
+        public boolean onImageData(ImageBlock imageBlock, int index) {
+            return index == 0 && previewFirstFrame(imageBlock);
+        }
+    };
+
+    /**
+     * Gets the delay a frame is displayed for: delays under 20 ms are played at 100 ms, like browsers do.
+     *
+     * @param delay delay of the graphic control extension, in milliseconds
+     * @return delay in milliseconds
+     */
+    public static int getDisplayDelay(int delay) {
+        return delay < MIN_DELAY_ENFORCE_THRESHOLD ? MIN_DELAY : delay;
+    }
+
+    /**
+     * Subsamples the frames, keeping one pixel out of sampleSize in each direction.
+     * Frames are then about sampleSize^2 times smaller to decode and to keep in memory.
+     * Must be called before reading; overrides {@link #setTargetSize(int, int)}.
+     *
+     * @param sampleSize subsampling factor, 1 to decode full size frames
+     */
+    public void setSampleSize(int sampleSize) {
+        mRequestedSampleSize = Math.max(1, sampleSize);
+        mTargetWidth = 0;
+        mTargetHeight = 0;
+    }
+
+    /**
+     * Subsamples the frames as much as possible while keeping them at least as large as a
+     * target size, see {@link #calculateSampleSize(int, int, int, int)}.
+     * Must be called before reading; overrides {@link #setSampleSize(int)}.
+     *
+     * @param targetWidth  width the frames are needed at, in pixels
+     * @param targetHeight height the frames are needed at, in pixels
+     */
+    public void setTargetSize(int targetWidth, int targetHeight) {
+        mRequestedSampleSize = 1;
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+    }
+
+    /**
+     * Gets the largest power of two subsampling factor keeping a gif at least as large as a target size.
+     *
+     * @param width        width of the gif
+     * @param height       height of the gif
+     * @param targetWidth  width the gif is displayed at
+     * @param targetHeight height the gif is displayed at
+     * @return subsampling factor, 1 if the target size is not smaller than half the gif
+     */
+    public static int calculateSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Gets the subsampling factor the frames are decoded with.
+     * The frames are {@link #getImageWidth()} x {@link #getImageHeight()}, and are meant to be
+     * scaled by this factor to the size of the gif when drawn.
+     *
+     * @return subsampling factor, 1 for full size frames
+     */
+    public int getSampleSize() {
+        return mSampleSize;
+    }
+
+    /**
+     * Composites the frames as they are read, each passed to {@link #onFrameRead(int)}, instead of
+     * on demand. The image data of files read from a stream is then not kept, so
+     * {@link #getFramePixels(int)} can only return the frame on the canvas.
+     * Must be called before reading.
+     *
+     * @param decodeWhileReading true to composite frames as they are read
+     */
+    public void setDecodeWhileReading(boolean decodeWhileReading) {
+        mDecodeWhileReading = decodeWhileReading;
+    }
+
+    /**
+     * Decodes the image data of frames on an executor, several frames at a time, e.g. on a
+     * {@link java.util.concurrent.ForkJoinPool} or a fixed thread pool. Frames are still
+     * composited one after another, in order, on the thread reading the file, as soon as they
+     * are decoded. Ignored unless decoding while reading. Must be called before reading.
+     *
+     * @param executor executor, or null to decode frames on the thread reading the file
+     */
+    public void setDecodeExecutor(ExecutorService executor) {
+        mDecodeExecutor = executor;
+    }
+
+    /**
+     * Previews the first frame while it is read, after its first and second interlace passes,
+     * for large interlaced gifs read from a slow stream. Previews are passed to
+     * {@link #onPreview(int[], int)}; gifs read from a buffer are not previewed, their frames are
+     * decoded right away. Must be called before reading.
+     *
+     * @param previewFirstFrame true to preview the first frame
+     */
+    public void setPreviewFirstFrame(boolean previewFirstFrame) {
+        mPreviewFirstFrame = previewFirstFrame;
+    }
+
+    /**
+     * Sets the metrics receiving the decode times and allocations of this decoder.
+     *
+     * @param metrics metrics, or null for {@link GifMetrics#getDefault()}
+     */
+    public void setMetrics(GifMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public GifMetrics getMetrics() {
+        return mMetrics != null ? mMetrics : GifMetrics.getDefault();
+    }
+
+    /**
+     * Reads GIF image from stream.
+     * Blocks are parsed straight off the stream in a single pass; image blocks are copied out of
+     * the stream unless frames are composited as soon as they have been read.
+     *
+     * @param is containing GIF file, closed once read
+     * @return read status code (0 = no errors)
+     */
+    public int read(InputStream is) throws IOException {
+        init();
+        // the parser reuses its block buffer, frames decoded later need their own copy
+        mKeepBlocks = !mDecodeWhileReading;
+        mParser.setRetainBlocks(!mDecodeWhileReading || mDecodeExecutor != null);
+        mParser.setProgressListener(mPreviewFirstFrame ? mProgressListener : null);
+        int status = STATUS_CANCELLED; // frames still decoding are dropped if the stream fails
+        try {
+            status = mParser.parse(is, mParserListener);
+        } finally {
+            compositePendingFrames(status);
+        }
+        setParseStatus(status);
+        reportRead();
+        return mStatus;
+    }
+
+    /**
+     * Reads GIF image from a byte array.
+     *
+     * @param data containing GIF file.
+     * @return read status code (0 = no errors)
+     * @see #read(java.nio.ByteBuffer)
+     */
+    public int read(byte[] data) {
+        return read(data != null ? ByteBuffer.wrap(data) : null);
+    }
+
+    /**
+     * Reads GIF image from a buffer, starting at its current position.
+     * Blocks are indexed in place: frames keep offsets into the buffer instead of copies
+     * of their data, so the buffer must not be modified while the decoder is in use.
+     *
+     * @param buffer containing GIF file, e.g. a memory-mapped file.
+     * @return read status code (0 = no errors)
+     */
+    public int read(ByteBuffer buffer) {
+        init();
+        mKeepBlocks = true;
+        int status = mParser.parse(buffer, mParserListener);
+        compositePendingFrames(status);
+        setParseStatus(status);
+        reportRead();
+        return mStatus;
+    }
+
+    private void reportRead() {
+        GifMetrics metrics = getMetrics();
+        metrics.onRead(this, System.nanoTime() - mReadStartNanos, mFrameCount, mStatus);
+        metrics.onFrameMemory(this, getByteCount());
+    }
+
+    /**
+     * Stops a read in progress on another thread as soon as the current block is done.
+     * The read then returns {@link #STATUS_CANCELLED}, and so does any later read.
+     */
+    public void cancel() {
+        mParser.cancel();
+    }
+
+    public boolean isCancelled() {
+        return mParser.isCancelled();
+    }
+
+    /**
+     * Gets the status of the last read, or {@link #STATUS_FORMAT_ERROR} once a frame failed to decode.
+     *
+     * @return read status code (0 = no errors)
+     */
+    public int getStatus() {
+        return mStatus;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return width of the frames returned by {@link #getFramePixels(int)}, subsampled
+     */
+    public int getImageWidth() {
+        return mImageWidth;
+    }
+
+    /**
+     * @return height of the frames returned by {@link #getFramePixels(int)}, subsampled
+     */
+    public int getImageHeight() {
+        return mImageHeight;
+    }
+
+    /**
+     * Gets the number of frames read from file.
+     * While a read is in progress, this is the number of frames that can be retrieved so far.
+     *
+     * @return frame count
+     */
+    public synchronized int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Gets display duration for specified frame.
+     *
+     * @param n int index of frame
+     * @return delay in milliseconds, or -1 if n is invalid
+     */
+    public synchronized int getDelay(int n) {
+        return n >= 0 && n < mFrameCount ? mFrames.get(n).delay : -1;
+    }
+
+    /**
+     * Gets the duration of one loop of the animation.
+     * While a read is in progress, this is the duration of the frames counted so far.
+     *
+     * @return duration in milliseconds
+     */
+    public synchronized int getDuration() {
+        return mFrameCount > 0 ? mFrameEndTimes[mFrameCount - 1] : 0;
+    }
+
+    /**
+     * Gets the number of times the animation is repeated, from the NETSCAPE2.0 extension.
+     *
+     * @return loop count, {@link GifMetadata#LOOP_FOREVER}, or {@link GifMetadata#LOOP_NONE} if the file has none
+     */
+    public int getLoopCount() {
+        return mLoopCount;
+    }
+
+    /**
+     * Gets the time frame n starts at, since the start of the animation.
+     *
+     * @param n int index of frame
+     * @return time in milliseconds, or -1 if n is invalid
+     */
+    public synchronized int getFrameStartTime(int n) {
+        if (n < 0 || n >= mFrameCount) {
+            return -1;
+        }
+        return n > 0 ? mFrameEndTimes[n - 1] : 0;
+    }
+
+    /**
+     * Gets the frame shown at a given time since the start of the animation, by binary search
+     * over the cumulative frame delays.
+     *
+     * @param time time in milliseconds, clamped to the duration of the frames read
+     * @return index of frame, or -1 if no frame has been read
+     */
+    public synchronized int getFrameIndexAt(long time) {
+        if (mFrameCount <= 0) {
+            return -1;
+        }
+        if (time >= mFrameEndTimes[mFrameCount - 1]) {
+            return mFrameCount - 1;
+        }
+        int i = Arrays.binarySearch(mFrameEndTimes, 0, mFrameCount, (int) Math.max(0, time));
+        // a frame ending exactly at time is followed by the frame shown
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Gets the region of the canvas that can change when moving from one frame to another:
+     * the rectangles of the frames in between, plus the rectangles they dispose of.
+     * The first frame is a full change, since it follows the last one when looping.
+     *
+     * @param from   index of the frame shown
+     * @param to     index of the frame to show, reached by moving forward and looping
+     * @param bounds receives the left, top, right and bottom of the region, in pixels of the gif
+     * @return false if either index is invalid
+     */
+    public synchronized boolean getDirtyBounds(int from, int to, int[] bounds) {
+        if (from < 0 || from >= mFrameCount || to < 0 || to >= mFrameCount) {
+            return false;
+        }
+        Arrays.fill(bounds, 0, 4, 0);
+        for (int i = from; i != to; ) {
+            i = (i + 1) % mFrameCount;
+            union(bounds, mFrames.get(i).dirtyRect);
+        }
+        return true;
+    }
+
+    /**
+     * Whether frame n has no transparent pixel once composited, and neither have the frames before it.
+     *
+     * @param n index of a frame read
+     * @return false if n is invalid
+     */
+    public synchronized boolean isOpaque(int n) {
+        return n >= 0 && n < mFrames.size() && mFrames.get(n).opaque;
+    }
+
+    /**
+     * Gets the bytes held by the frames once decoded: the canvas they are composited onto.
+     *
+     * @return size in bytes
+     */
+    public int getByteCount() {
+        return mImageWidth * mImageHeight * 4;
+    }
+
+    /**
+     * Gets the colors of the global color table.
+     *
+     * @return a copy of the colors, empty if the file has no global color table
+     */
+    public int[] getGlobalColorTable() {
+        return Arrays.copyOf(mColorTables.getGlobalColorTable(), mColorTables.getGlobalColorTableLength());
+    }
+
+    /**
+     * Gets the image contents of frame n, compositing the frames it depends on.
+     *
+     * @param n index of frame
+     * @return ARGB pixels, imageWidth * imageHeight long, transparent pixels 0; the buffer is
+     * reused by the next call. Null if n is invalid, or if the image data of the frames it depends
+     * on was not kept, see {@link #setDecodeWhileReading(boolean)}.
+     */
+    public synchronized int[] getFramePixels(int n) {
+        if (n < 0 || n >= mFrames.size()) {
+            return null;
+        }
+        int start = getFirstFrameToComposite(n);
+        for (int i = start; i <= n; i++) {
+            if (mFrames.get(i).imageBlock == null) {
+                return null;
+            }
+        }
+        if (start != mDecodedIndex + 1) {
+            // frames depend on the previous ones up to the last key frame, start from there
+            mCompositor.reset();
+        }
+        for (int i = start; i <= n; i++) {
+            compositeFrame(i, mFrames.get(i), null, 0);
+        }
+        return mCompositor.getPixels();
+    }
+
+    /**
+     * Gets the first frame {@link #getFramePixels(int)} composites to get frame n: the frame following
+     * the one on the canvas, or the last frame not depending on the previous ones if the canvas is past n.
+     *
+     * @param n index of a frame read
+     * @return index of frame, n + 1 if frame n is on the canvas already
+     */
+    protected synchronized int getFirstFrameToComposite(int n) {
+        if (n == mDecodedIndex) {
+            return n + 1;
+        }
+        int keyFrame = n;
+        while (!mFrames.get(keyFrame).keyFrame && keyFrame > 0) {
+            keyFrame--;
+        }
+        return n < mDecodedIndex || keyFrame > mDecodedIndex + 1 ? keyFrame : mDecodedIndex + 1;
+    }
+
+    /**
+     * Called on the thread reading the file once frame index has been read, before
+     * {@link #getFrameCount()} counts it: composited when decoding while reading, so
+     * {@link #getFramePixels(int)} returns it without further work, or only indexed otherwise.
+     * Does nothing by default.
+     *
+     * @param index index of the frame
+     */
+    protected void onFrameRead(int index) {
+    }
+
+    /**
+     * Called on the thread reading the file once {@link #getFrameCount()} counts frame index.
+     * Does nothing by default.
+     *
+     * @param index index of the frame
+     */
+    protected void onFramePublished(int index) {
+    }
+
+    /**
+     * Called on the thread reading the file when more interlace passes of the first frame have
+     * been read, before the frame itself is decoded, see {@link #setPreviewFirstFrame(boolean)}.
+     * Does nothing by default.
+     *
+     * @param pixels first frame so far, each row read repeated down to the next one; ARGB, the
+     *               size of the decoded frames, reused by the next call
+     * @param passes number of interlace passes read
+     */
+    protected void onPreview(int[] pixels, int passes) {
+    }
+
+    /**
+     * Initializes or re-initializes reader
+     */
+    protected void init() {
+        mReadStartNanos = System.nanoTime();
+        mStatus = STATUS_OK;
+        synchronized (this) {
+            mFrames.clear();
+            mFrameCount = 0;
+        }
+        mLoopCount = GifMetadata.LOOP_NONE;
+        mDecodedIndex = -1;
+        mCanvasOpaque = false;
+        mPreviewPasses = 0;
+        mGcExt = null;
+    }
+
+    /**
+     * Keeps a frame decoding error unless parsing failed too, truncated files keep the frames decoded so far.
+     */
+    private void setParseStatus(int status) {
+        if (status != STATUS_OK) {
+            mStatus = status;
+        }
+    }
+
+    /**
+     * Sets up the canvas from the header of the file, reusing the one of the previous file if
+     * it has the same size.
+     *
+     * @param header header of the file
+     * @return false to stop reading
+     */
+    protected boolean readHeader(GifHeader header) {
+        if (!header.getSignature().equals("GIF")) {
+            mStatus = STATUS_FORMAT_ERROR;
+            return false;
+        }
+        mWidth = header.getWidth();
+        mHeight = header.getHeight();
+        mSampleSize = mTargetWidth > 0
+                ? calculateSampleSize(mWidth, mHeight, mTargetWidth, mTargetHeight) : mRequestedSampleSize;
+        mImageWidth = GifFrameDecoder.sample(mWidth, mSampleSize);
+        mImageHeight = GifFrameDecoder.sample(mHeight, mSampleSize);
+        if (mCompositor != null && mCompositor.getWidth() == mImageWidth && mCompositor.getHeight() == mImageHeight) {
+            // same size as the previous file, e.g. decoding a batch of thumbnails
+            mCompositor.reset();
+        } else {
+            mCompositor = new GifCompositor(mImageWidth, mImageHeight);
+            getMetrics().onBytesAllocated(this, mImageWidth * mImageHeight * 4);
+        }
+        mColorTables.readGlobalColorTable(header);
+        return true;
+    }
+
+    private void readImageBlock(ImageBlock imageBlock) {
+        int index = mFrames.size();
+        Frame frame = new Frame();
+        frame.imageBlock = imageBlock;
+        frame.gcExt = mGcExt;
+        frame.dispose = mGcExt != null ? mGcExt.getDisposalMothod() : GifCompositor.DISPOSE_UNSPECIFIED;
+        frame.delay = getDisplayDelay(mGcExt != null ? mGcExt.getDelayTime() * 10 : 0);
+        mGcExt = null;
+        boolean transparent = frame.gcExt != null && frame.gcExt.getTransparentColorFlag() != 0;
+        int left = imageBlock.ImageLeftPosition();
+        int top = imageBlock.getImageTopPosition();
+        frame.keyFrame = left == 0 && top == 0
+                && imageBlock.getImageWidth() == mWidth && imageBlock.getImageHeight() == mHeight
+                && !transparent && frame.dispose != GifCompositor.DISPOSE_PREVIOUS;
+        int[] rect = frame.rect;
+        rect[0] = Math.max(0, left);
+        rect[1] = Math.max(0, top);
+        rect[2] = Math.min(mWidth, left + imageBlock.getImageWidth());
+        rect[3] = Math.min(mHeight, top + imageBlock.getImageHeight());
+        // an opaque frame covering the canvas hides any transparent pixel left by the previous ones
+        boolean canvasOpaque = mCanvasOpaque || rect[0] == 0 && rect[1] == 0
+                && rect[2] == mWidth && rect[3] == mHeight && !transparent;
+        // once a frame is transparent, the following ones stay so, so colors do not change depth
+        frame.opaque = canvasOpaque && (index == 0 || mFrames.get(index - 1).opaque);
+        if (frame.dispose == GifCompositor.DISPOSE_BACKGROUND) {
+            mCanvasOpaque = false;
+        } else if (frame.dispose != GifCompositor.DISPOSE_PREVIOUS) {
+            mCanvasOpaque = canvasOpaque;
+        }
+        if (index == 0) {
+            frame.dirtyRect[2] = mWidth;
+            frame.dirtyRect[3] = mHeight;
+        } else {
+            union(frame.dirtyRect, rect);
+            Frame previous = mFrames.get(index - 1);
+            if (previous.dispose == GifCompositor.DISPOSE_BACKGROUND || previous.dispose == GifCompositor.DISPOSE_PREVIOUS) {
+                union(frame.dirtyRect, previous.rect);
+            }
+        }
+        synchronized (this) {
+            mFrames.add(frame);
+        }
+        if (!mDecodeWhileReading) {
+            // only index the frame, it is decoded by getFramePixels()
+            publishFrame(index);
+        } else if (mDecodeExecutor != null) {
+            submitDecode(frame);
+            // composite the frames decoded so far, waiting for the oldest ones if too many are pending
+            while (mFrames.size() - mFrameCount > MAX_PENDING_FRAMES && compositeNextFrame(true)) {
+            }
+            while (compositeNextFrame(false)) {
+            }
+        } else {
+            synchronized (this) {
+                compositeFrame(index, frame, null, 0);
+            }
+            if (!mKeepBlocks) {
+                frame.imageBlock = null;
+            }
+            publishFrame(index);
+        }
+    }
+
+    /**
+     * Extends a rectangle to cover another one; empty rectangles are ignored.
+     *
+     * @param bounds left, top, right and bottom of the rectangle extended
+     * @param other  left, top, right and bottom of the rectangle to cover
+     */
+    private static void union(int[] bounds, int[] other) {
+        if (other[0] >= other[2] || other[1] >= other[3]) {
+            return;
+        }
+        if (bounds[0] >= bounds[2] || bounds[1] >= bounds[3]) {
+            System.arraycopy(other, 0, bounds, 0, 4);
+            return;
+        }
+        bounds[0] = Math.min(bounds[0], other[0]);
+        bounds[1] = Math.min(bounds[1], other[1]);
+        bounds[2] = Math.max(bounds[2], other[2]);
+        bounds[3] = Math.max(bounds[3], other[3]);
+    }
+
+    /**
+     * Previews the first frame from the image data read so far, once more of its interlace passes are complete.
+     *
+     * @param imageBlock image block read so far
+     * @return false once no further preview is needed
+     */
+    private boolean previewFirstFrame(ImageBlock imageBlock) {
+        int pixelCount = imageBlock.getImageWidth() * imageBlock.getImageHeight();
+        if (mCompositor == null || imageBlock.getInterlaceFlag() == 0 || pixelCount < PREVIEW_MIN_PIXELS) {
+            return false;
+        }
+        if (mPixels == null || mPixels.length < pixelCount) {
+            mPixels = new byte[pixelCount];
+            getMetrics().onBytesAllocated(this, pixelCount);
+        }
+        int passes = GifFrameDecoder.getCompletePasses(imageBlock, mFrameDecoder.decodeAvailableIndices(imageBlock, mPixels));
+        if (passes <= mPreviewPasses) {
+            return true;
+        }
+        if (passes == GifFrameDecoder.INTERLACE_PASSES) {
+            // the frame itself is decoded next
+            return false;
+        }
+        mPreviewPasses = passes;
+        int transparentIndex = -1;
+        if (mGcExt != null && mGcExt.getTransparentColorFlag() != 0) {
+            transparentIndex = mGcExt.getTransparentColorIndex();
+        }
+        int canvasPixelCount = mImageWidth * mImageHeight;
+        if (mPreviewPixels == null || mPreviewPixels.length != canvasPixelCount) {
+            mPreviewPixels = new int[canvasPixelCount];
+            getMetrics().onBytesAllocated(this, canvasPixelCount * 4);
+        }
+        Arrays.fill(mPreviewPixels, 0);
+        mFrameDecoder.mapPreview(imageBlock, mPixels, mColorTables.getColorTable(imageBlock), transparentIndex,
+                mSampleSize, passes, mPreviewPixels, mImageWidth, mImageHeight);
+        onPreview(mPreviewPixels, passes);
+        return mPreviewPasses < PREVIEW_PASSES;
+    }
+
+    /**
+     * Counts the next frame, it may be displayed while the following ones are read.
+     */
+    private void publishFrame(int index) {
+        onFrameRead(index);
+        synchronized (this) {
+            if (mFrameEndTimes.length <= index) {
+                mFrameEndTimes = Arrays.copyOf(mFrameEndTimes, mFrameEndTimes.length * 2);
+            }
+            mFrameEndTimes[index] = (index > 0 ? mFrameEndTimes[index - 1] : 0) + mFrames.get(index).delay;
+            mFrameCount++;
+        }
+        if (index == 0) {
+            getMetrics().onFirstFrame(this, System.nanoTime() - mReadStartNanos);
+        }
+        onFramePublished(index);
+    }
+
+    /**
+     * Decodes the color indices of a frame on the decode executor.
+     */
+    private void submitDecode(final Frame frame) {
+        final ImageBlock imageBlock = frame.imageBlock;
+        int pixelCount = imageBlock.getImageWidth() * imageBlock.getImageHeight();
+        byte[] pixels = null;
+        for (int i = mIndexBuffers.size() - 1; i >= 0 && pixels == null; i--) {
+            if (mIndexBuffers.get(i).length >= pixelCount) {
+                pixels = mIndexBuffers.remove(i);
+            }
+        }
+        if (pixels == null) {
+            pixels = new byte[pixelCount];
+            getMetrics().onBytesAllocated(this, pixelCount);
+        }
+        final byte[] framePixels = pixels;
+        frame.pixels = framePixels;
+        frame.decodeTask = mDecodeExecutor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                long start = System.nanoTime();
+                boolean complete = sFrameDecoders.get().decodeIndices(imageBlock, framePixels);
+                frame.decodeTimeNanos = System.nanoTime() - start;
+                return complete;
+            }
+        });
+    }
+
+    /**
+     * Composites the oldest frame decoded in parallel and not composited yet.
+     *
+     * @param wait true to wait for the frame to be decoded
+     * @return false if there was no such frame, or it was still decoding
+     */
+    private boolean compositeNextFrame(boolean wait) {
+        if (mFrameCount >= mFrames.size()) {
+            return false;
+        }
+        Frame frame = mFrames.get(mFrameCount);
+        if (!wait && !frame.decodeTask.isDone()) {
+            return false;
+        }
+        try {
+            if (!frame.decodeTask.get()) {
+                mStatus = STATUS_FORMAT_ERROR;
+            }
+        } catch (InterruptedException e) {
+            // stop reading, the pending frames are dropped
+            Thread.currentThread().interrupt();
+            mParser.cancel();
+            mStatus = STATUS_CANCELLED;
+            return false;
+        } catch (ExecutionException e) {
+            getMetrics().onFrameError(this, mFrameCount, e.getCause());
+            mStatus = STATUS_FORMAT_ERROR;
+        }
+        synchronized (this) {
+            compositeFrame(mFrameCount, frame, frame.pixels, frame.decodeTimeNanos);
+        }
+        mIndexBuffers.add(frame.pixels);
+        frame.pixels = null;
+        frame.decodeTask = null;
+        if (!mKeepBlocks) {
+            frame.imageBlock = null;
+        }
+        publishFrame(mFrameCount);
+        return true;
+    }
+
+    /**
+     * Composites the frames still decoding once the whole file has been read,
+     * or drops them if reading was cancelled.
+     */
+    private void compositePendingFrames(int status) {
+        if (status != STATUS_CANCELLED) {
+            while (compositeNextFrame(true)) {
+            }
+        }
+        synchronized (this) {
+            while (mFrames.size() > mFrameCount) {
+                Frame frame = mFrames.remove(mFrames.size() - 1);
+                if (frame.decodeTask != null) {
+                    frame.decodeTask.cancel(false);
+                }
+            }
+        }
+        mIndexBuffers.clear();
+    }
+
+    /**
+     * Decodes a frame and composites it over the previous ones, onto the canvas.
+     * Called holding the lock of the decoder.
+     *
+     * @param index           index of the frame
+     * @param frame           frame
+     * @param pixels          color indices of the frame if already decoded, or null to decode them
+     * @param decodeTimeNanos time taken to decode the color indices given
+     */
+    private void compositeFrame(int index, Frame frame, byte[] pixels, long decodeTimeNanos) {
+        ImageBlock imageBlock = frame.imageBlock;
+        int[] colorTable = mColorTables.getColorTable(imageBlock);
+        int transparentIndex = -1;
+        if (frame.gcExt != null && frame.gcExt.getTransparentColorFlag() != 0) {
+            transparentIndex = frame.gcExt.getTransparentColorIndex();
+        }
+        long start = System.nanoTime();
+        if (pixels == null) {
+            int pixelCount = imageBlock.getImageWidth() * imageBlock.getImageHeight();
+            if (mPixels == null || mPixels.length < pixelCount) {
+                mPixels = new byte[pixelCount];
+                getMetrics().onBytesAllocated(this, pixelCount);
+            }
+            pixels = mPixels;
+            if (pixelCount > 0 && !mFrameDecoder.decodeIndices(imageBlock, pixels)) {
+                mStatus = STATUS_FORMAT_ERROR;
+            }
+        }
+        long decoded = System.nanoTime();
+        // the colors go straight into the canvas, over the previous frames
+        mFrameDecoder.mapColors(imageBlock, pixels, colorTable, transparentIndex, mSampleSize, mCompositor, frame.dispose);
+        mDecodedIndex = index;
+        getMetrics().onFrameDecoded(this, index, decodeTimeNanos + decoded - start, System.nanoTime() - decoded);
+    }
+}
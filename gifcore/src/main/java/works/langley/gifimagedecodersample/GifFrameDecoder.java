@@ -0,0 +1,353 @@
+package works.langley.gifimagedecodersample;
+
+/**
+ * Decodes the image data of a frame into ARGB colors: LZW decoding, color table lookup,
+ * transparency and interlacing.
+ * <p/>
+ * Buffers are reused between frames; an instance must not be shared between threads.
+ */
+public class GifFrameDecoder {
+    // Number of passes of interlaced frames, rows 0, 8, 16... come first, then 4, 12..., then 2, 6..., then 1, 3...
+    public static final int INTERLACE_PASSES = 4;
+
+    private final GifLzwDecoder mLzwDecoder = new GifLzwDecoder();
+    private byte[] mPixels; // color indices of the current frame
+    private final int[] mColorLookup = new int[GifColorTables.LOOKUP_TABLE_LENGTH]; // color table with transparency applied
+
+    /**
+     * Decodes a frame.
+     *
+     * @param imageBlock       image block of the frame
+     * @param colorTable       lookup table of the frame, as read by {@link GifColorTables}
+     * @param transparentIndex index of the transparent color, or -1
+     * @param colors           destination of the ARGB colors, at least width * height long;
+     *                         transparent pixels are set to 0
+     * @return false if the image data was truncated or corrupt
+     */
+    public boolean decode(ImageBlock imageBlock, int[] colorTable, int transparentIndex, int[] colors) {
+        return decode(imageBlock, colorTable, transparentIndex, 1, colors);
+    }
+
+    /**
+     * Decodes a frame, keeping one pixel out of sampleSize in each direction: the pixels of the
+     * logical screen at multiples of sampleSize. The frame then spans, in the subsampled screen,
+     * from {@link #sample(int, int)} of its left and top positions to that of its right and bottom edges.
+     *
+     * @param imageBlock       image block of the frame
+     * @param colorTable       lookup table of the frame, as read by {@link GifColorTables}
+     * @param transparentIndex index of the transparent color, or -1
+     * @param sampleSize       subsampling factor, 1 to keep every pixel
+     * @param colors           destination of the ARGB colors of the subsampled frame;
+     *                         transparent pixels are set to 0
+     * @return false if the image data was truncated or corrupt
+     */
+    public boolean decode(ImageBlock imageBlock, int[] colorTable, int transparentIndex, int sampleSize, int[] colors) {
+        int pixelCount = imageBlock.getImageWidth() * imageBlock.getImageHeight();
+        if (mPixels == null || mPixels.length < pixelCount) {
+            mPixels = new byte[pixelCount];
+        }
+        boolean complete = decodeIndices(imageBlock, mPixels);
+        mapColors(imageBlock, mPixels, colorTable, transparentIndex, sampleSize, colors);
+        return complete;
+    }
+
+    /**
+     * Decodes the color indices of a frame, in the order they are stored: the first step of
+     * {@link #decode(ImageBlock, int[], int, int, int[])}. It does not depend on the other frames,
+     * so frames can be decoded in parallel, each thread using its own instance.
+     *
+     * @param imageBlock image block of the frame
+     * @param pixels     destination of the color indices, at least width * height long
+     * @return false if the image data was truncated or corrupt
+     */
+    public boolean decodeIndices(ImageBlock imageBlock, byte[] pixels) {
+        int pixelCount = imageBlock.getImageWidth() * imageBlock.getImageHeight();
+        // the whole image data has to be decoded, LZW codes depend on the previous ones
+        int decoded = mLzwDecoder.decode(imageBlock.buffer, imageBlock.offset + imageBlock.getImageDataOffset(),
+                imageBlock.getLZWMinimumCodeSize(), pixels, pixelCount);
+        return decoded == pixelCount;
+    }
+
+    /**
+     * Decodes the color indices of a frame whose image data may still be incomplete, e.g. read so far
+     * from a stream, see {@link GifParser.ProgressListener}.
+     *
+     * @param imageBlock image block of the frame
+     * @param pixels     destination of the color indices, at least width * height long;
+     *                   pixels not decoded yet are set to index 0
+     * @return number of pixels decoded, in the order they are stored
+     */
+    public int decodeAvailableIndices(ImageBlock imageBlock, byte[] pixels) {
+        return mLzwDecoder.decode(imageBlock.buffer, imageBlock.offset + imageBlock.getImageDataOffset(),
+                imageBlock.getLZWMinimumCodeSize(), pixels, imageBlock.getImageWidth() * imageBlock.getImageHeight());
+    }
+
+    /**
+     * Gets the number of interlace passes complete once the first pixels of a frame are decoded.
+     * Frames that are not interlaced have a single pass, counted as all of them.
+     *
+     * @param imageBlock    image block of the frame
+     * @param decodedPixels number of pixels decoded, in the order they are stored
+     * @return 0 to {@link #INTERLACE_PASSES}
+     */
+    public static int getCompletePasses(ImageBlock imageBlock, int decodedPixels) {
+        int iw = imageBlock.getImageWidth();
+        int ih = imageBlock.getImageHeight();
+        if (decodedPixels >= iw * ih) {
+            return INTERLACE_PASSES;
+        }
+        if (imageBlock.getInterlaceFlag() == 0) {
+            return 0;
+        }
+        int rows = decodedPixels / iw;
+        int passes = 0;
+        int passEnd = 0;
+        while (passes < INTERLACE_PASSES) {
+            passEnd += getPassRowCount(passes + 1, ih);
+            if (rows < passEnd) {
+                break;
+            }
+            passes++;
+        }
+        return passes;
+    }
+
+    /**
+     * Gets the number of rows of an interlace pass.
+     *
+     * @param pass pass, 1 to {@link #INTERLACE_PASSES}
+     * @param ih   height of the frame
+     */
+    private static int getPassRowCount(int pass, int ih) {
+        switch (pass) {
+            case 1:
+                return (ih + 7) / 8;
+            case 2:
+                return (ih + 3) / 8;
+            case 3:
+                return (ih + 1) / 4;
+            default:
+                return ih / 2;
+        }
+    }
+
+    /**
+     * Maps the complete interlace passes of a frame to colors for a coarse preview, while the rest
+     * of its image data is still being read: each row decoded is repeated down to the next one,
+     * 8 rows after the first pass, 4 after the second, 2 after the third.
+     *
+     * @param imageBlock       image block of the frame
+     * @param pixels           color indices, as decoded by {@link #decodeAvailableIndices(ImageBlock, byte[])}
+     * @param colorTable       lookup table of the frame, as read by {@link GifColorTables}
+     * @param transparentIndex index of the transparent color, or -1
+     * @param sampleSize       subsampling factor, 1 to keep every pixel
+     * @param passes           number of complete passes, at least 1, see {@link #getCompletePasses(ImageBlock, int)}
+     * @param canvas           destination of the ARGB colors, laid out as the subsampled logical screen;
+     *                         transparent pixels are set to 0, the rest of the canvas is left as it is
+     * @param canvasWidth      width of the subsampled logical screen
+     * @param canvasHeight     height of the subsampled logical screen
+     */
+    public void mapPreview(ImageBlock imageBlock, byte[] pixels, int[] colorTable, int transparentIndex, int sampleSize,
+                           int passes, int[] canvas, int canvasWidth, int canvasHeight) {
+        int left = imageBlock.ImageLeftPosition();
+        int top = imageBlock.getImageTopPosition();
+        int iw = imageBlock.getImageWidth();
+        int ih = imageBlock.getImageHeight();
+        int[] lookup = getLookup(colorTable, transparentIndex);
+
+        int sampledLeft = sample(left, sampleSize);
+        int sampledWidth = Math.min(sample(left + iw, sampleSize), canvasWidth) - sampledLeft;
+        int sampledTop = sample(top, sampleSize);
+        int sampledBottom = Math.min(sample(top + ih, sampleSize), canvasHeight);
+        int firstColumn = sampledLeft * sampleSize - left;
+        // rows decoded so far are the multiples of step
+        boolean interlaced = imageBlock.getInterlaceFlag() != 0;
+        int step = interlaced ? 8 >> (Math.min(passes, INTERLACE_PASSES) - 1) : 1;
+        int pass1 = getPassRowCount(1, ih);
+        int pass2 = pass1 + getPassRowCount(2, ih);
+        int pass3 = pass2 + getPassRowCount(3, ih);
+        for (int y = sampledTop; y < sampledBottom; y++) {
+            int row = y * sampleSize - top;
+            row -= row % step;
+            // position of the row in the order rows are stored
+            int i = row;
+            if (interlaced) {
+                if (row % 8 == 0) {
+                    i = row / 8;
+                } else if (row % 8 == 4) {
+                    i = pass1 + row / 8;
+                } else if (row % 4 == 2) {
+                    i = pass2 + row / 4;
+                } else {
+                    i = pass3 + row / 2;
+                }
+            }
+            int src = i * iw + firstColumn;
+            int offset = y * canvasWidth + sampledLeft;
+            for (int x = 0; x < sampledWidth; x++, src += sampleSize) {
+                canvas[offset + x] = lookup[pixels[src] & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * Maps the color indices of a frame to colors, deinterlacing and subsampling them:
+     * the second step of {@link #decode(ImageBlock, int[], int, int, int[])}.
+     *
+     * @param imageBlock       image block of the frame
+     * @param pixels           color indices, as decoded by {@link #decodeIndices(ImageBlock, byte[])}
+     * @param colorTable       lookup table of the frame, as read by {@link GifColorTables}
+     * @param transparentIndex index of the transparent color, or -1
+     * @param sampleSize       subsampling factor, 1 to keep every pixel
+     * @param colors           destination of the ARGB colors of the subsampled frame;
+     *                         transparent pixels are set to 0
+     */
+    public void mapColors(ImageBlock imageBlock, byte[] pixels, int[] colorTable, int transparentIndex,
+                          int sampleSize, int[] colors) {
+        int sampledLeft = sample(imageBlock.ImageLeftPosition(), sampleSize);
+        int sampledTop = sample(imageBlock.getImageTopPosition(), sampleSize);
+        int sampledWidth = sample(imageBlock.ImageLeftPosition() + imageBlock.getImageWidth(), sampleSize) - sampledLeft;
+        mapRows(imageBlock, pixels, getLookup(colorTable, transparentIndex), sampleSize, colors,
+                sampledLeft, sampledTop, sampledWidth, Integer.MAX_VALUE, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Decodes a frame straight into the canvas of a compositor, without going through a frame buffer:
+     * same as {@link #decode(ImageBlock, int[], int, int, int[])} followed by
+     * {@link GifCompositor#composite(int[], int, int, int, int, int, boolean)}.
+     *
+     * @param imageBlock       image block of the frame
+     * @param colorTable       lookup table of the frame, as read by {@link GifColorTables}
+     * @param transparentIndex index of the transparent color, or -1
+     * @param sampleSize       subsampling factor of the compositor canvas
+     * @param compositor       compositor the frame is drawn into
+     * @param dispose          disposal method of the frame
+     * @return false if the image data was truncated or corrupt
+     */
+    public boolean decode(ImageBlock imageBlock, int[] colorTable, int transparentIndex, int sampleSize,
+                          GifCompositor compositor, int dispose) {
+        int pixelCount = imageBlock.getImageWidth() * imageBlock.getImageHeight();
+        if (mPixels == null || mPixels.length < pixelCount) {
+            mPixels = new byte[pixelCount];
+        }
+        boolean complete = pixelCount == 0 || decodeIndices(imageBlock, mPixels);
+        mapColors(imageBlock, mPixels, colorTable, transparentIndex, sampleSize, compositor, dispose);
+        return complete;
+    }
+
+    /**
+     * Maps the color indices of a frame to colors straight into the canvas of a compositor,
+     * after disposing of the previous frame. Transparent pixels leave the canvas as it is.
+     *
+     * @param imageBlock       image block of the frame
+     * @param pixels           color indices, as decoded by {@link #decodeIndices(ImageBlock, byte[])}
+     * @param colorTable       lookup table of the frame, as read by {@link GifColorTables}
+     * @param transparentIndex index of the transparent color, or -1
+     * @param sampleSize       subsampling factor of the compositor canvas
+     * @param compositor       compositor the frame is drawn into
+     * @param dispose          disposal method of the frame
+     */
+    public void mapColors(ImageBlock imageBlock, byte[] pixels, int[] colorTable, int transparentIndex,
+                          int sampleSize, GifCompositor compositor, int dispose) {
+        int sampledLeft = sample(imageBlock.ImageLeftPosition(), sampleSize);
+        int sampledTop = sample(imageBlock.getImageTopPosition(), sampleSize);
+        int sampledWidth = sample(imageBlock.ImageLeftPosition() + imageBlock.getImageWidth(), sampleSize) - sampledLeft;
+        int sampledHeight = sample(imageBlock.getImageTopPosition() + imageBlock.getImageHeight(), sampleSize) - sampledTop;
+        int[] canvas = compositor.beginFrame(sampledLeft, sampledTop, sampledWidth, sampledHeight, dispose);
+        mapRows(imageBlock, pixels, getLookup(colorTable, transparentIndex), sampleSize, canvas,
+                0, 0, compositor.getWidth(), compositor.getWidth(), compositor.getHeight(), transparentIndex >= 0);
+    }
+
+    /**
+     * Gets the lookup table of a frame with its transparent color set to 0,
+     * like the indices past the end of the color table.
+     */
+    private int[] getLookup(int[] colorTable, int transparentIndex) {
+        if (transparentIndex < 0) {
+            return colorTable;
+        }
+        System.arraycopy(colorTable, 0, mColorLookup, 0, mColorLookup.length);
+        mColorLookup[transparentIndex] = 0;
+        return mColorLookup;
+    }
+
+    /**
+     * Maps the rows of a frame, deinterlacing and subsampling them, into a destination of stride
+     * pixels per row whose first pixel is at (originLeft, originTop) of the subsampled screen.
+     * Pixels right of clipRight or below clipBottom are left out.
+     *
+     * @param skipTransparent true to leave the destination as it is under transparent pixels
+     */
+    private static void mapRows(ImageBlock imageBlock, byte[] pixels, int[] lookup, int sampleSize, int[] dest,
+                                int originLeft, int originTop, int stride, int clipRight, int clipBottom,
+                                boolean skipTransparent) {
+        int left = imageBlock.ImageLeftPosition();
+        int top = imageBlock.getImageTopPosition();
+        int iw = imageBlock.getImageWidth();
+        int ih = imageBlock.getImageHeight();
+
+        int sampledLeft = sample(left, sampleSize);
+        int sampledWidth = Math.min(sample(left + iw, sampleSize), clipRight) - sampledLeft;
+        int firstColumn = sampledLeft * sampleSize - left;
+
+        boolean interlaced = imageBlock.getInterlaceFlag() != 0;
+        int pass = 1;
+        int inc = 8;
+        int line = 0;
+        for (int i = 0; i < ih; i++) {
+            int row = i;
+            if (interlaced) {
+                // frames shorter than 5 rows have passes without any row
+                while (line >= ih && pass < 4) {
+                    pass++;
+                    switch (pass) {
+                        case 2:
+                            line = 4;
+                            break;
+                        case 3:
+                            line = 2;
+                            inc = 4;
+                            break;
+                        case 4:
+                            line = 1;
+                            inc = 2;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                row = line;
+                line += inc;
+            }
+            int y = (top + row) / sampleSize;
+            if ((top + row) % sampleSize != 0 || y >= clipBottom) {
+                continue;
+            }
+            int src = i * iw + firstColumn;
+            int offset = (y - originTop) * stride + sampledLeft - originLeft;
+            if (skipTransparent) {
+                for (int x = 0; x < sampledWidth; x++, src += sampleSize) {
+                    int color = lookup[pixels[src] & 0xFF];
+                    if (color != 0) {
+                        dest[offset + x] = color;
+                    }
+                }
+            } else {
+                for (int x = 0; x < sampledWidth; x++, src += sampleSize) {
+                    dest[offset + x] = lookup[pixels[src] & 0xFF];
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps a position of the logical screen to the subsampled screen, rounding up.
+     *
+     * @param position   position, at least 0
+     * @param sampleSize subsampling factor
+     * @return first subsampled position at or after position
+     */
+    public static int sample(int position, int sampleSize) {
+        return (position + sampleSize - 1) / sampleSize;
+    }
+}
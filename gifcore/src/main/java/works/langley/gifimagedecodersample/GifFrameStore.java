@@ -0,0 +1,246 @@
+package works.langley.gifimagedecodersample;
+
+import java.util.Arrays;
+
+/**
+ * Keeps composited frames as palette indices, compressed, so playing them again only
+ * takes expanding the indices instead of decoding and compositing the LZW data.
+ * <p/>
+ * Each frame is a sequence of runs, each starting with its length and type:
+ * <ul>
+ * <li>fill: one index repeated, stored once</li>
+ * <li>copy: indices unchanged since the previous frame, only used when it is stored too</li>
+ * <li>literal: indices stored as is</li>
+ * </ul>
+ * Frames referring to the previous one are expanded from the last frame expanded, so playing
+ * frames in order expands each of them once. A frame fully stored is kept every
+ * {@link #MAX_DELTA_CHAIN} frames to bound the cost of jumping to a frame.
+ * <p/>
+ * Frames are stored until the budget is used up.
+ */
+public class GifFrameStore {
+    private static final int MAX_DELTA_CHAIN = 16;
+    private static final int MIN_FILL_RUN = 3;
+    private static final int MIN_COPY_RUN = 2;
+
+    // run types, in the 2 low bits of the run length
+    private static final int RUN_FILL = 0;
+    private static final int RUN_COPY = 1;
+    private static final int RUN_LITERAL = 2;
+
+    private final int mFrameSize;
+    private final int mBudget;
+    private byte[][] mFrames = new byte[16][]; // compressed frames, null if not stored
+    private int[] mChainLengths = new int[16]; // frames to expand before this one, 0 if stored whole
+    private int mFrameCount; // frames stored
+    private int mByteCount;
+
+    private byte[] mBuffer; // frame being compressed
+    private final byte[] mReference; // indices of the last frame stored or expanded
+    private int mReferenceIndex = -1;
+
+    private int mExpandCount;
+    private long mExpandTimeNanos;
+
+    /**
+     * @param frameSize number of pixels of a frame
+     * @param budget    maximum number of bytes of the compressed frames
+     */
+    public GifFrameStore(int frameSize, int budget) {
+        mFrameSize = frameSize;
+        mBudget = budget;
+        mReference = new byte[frameSize];
+    }
+
+    public synchronized boolean contains(int index) {
+        return index < mFrames.length && mFrames[index] != null;
+    }
+
+    /**
+     * Compresses and stores a frame.
+     *
+     * @param index   index of the frame
+     * @param indices palette indices of the frame, frameSize long
+     * @return false if the frame does not fit in the budget
+     */
+    public synchronized boolean put(int index, byte[] indices) {
+        if (contains(index)) {
+            return true;
+        }
+        boolean delta = index > 0 && contains(index - 1) && mReferenceIndex == index - 1
+                && mChainLengths[index - 1] + 1 < MAX_DELTA_CHAIN;
+        int length = compress(indices, delta);
+        if (mByteCount + length > mBudget) {
+            return false;
+        }
+        if (index >= mFrames.length) {
+            int capacity = Math.max(index + 1, mFrames.length * 2);
+            mFrames = Arrays.copyOf(mFrames, capacity);
+            mChainLengths = Arrays.copyOf(mChainLengths, capacity);
+        }
+        mFrames[index] = Arrays.copyOf(mBuffer, length);
+        mChainLengths[index] = delta ? mChainLengths[index - 1] + 1 : 0;
+        mFrameCount++;
+        mByteCount += length;
+        System.arraycopy(indices, 0, mReference, 0, mFrameSize);
+        mReferenceIndex = index;
+        return true;
+    }
+
+    /**
+     * Expands a stored frame.
+     *
+     * @param index   index of the frame
+     * @param indices receives the palette indices of the frame, at least frameSize long
+     */
+    public synchronized void expand(int index, byte[] indices) {
+        long start = System.nanoTime();
+        if (index != mReferenceIndex) {
+            // expand from the previous frame if it is the reference, otherwise from the last frame stored whole
+            int first = index;
+            while (mChainLengths[first] > 0 && first - 1 != mReferenceIndex) {
+                first--;
+            }
+            for (int i = first; i <= index; i++) {
+                decompress(mFrames[i], mReference);
+            }
+            mReferenceIndex = index;
+        }
+        System.arraycopy(mReference, 0, indices, 0, mFrameSize);
+        mExpandCount++;
+        mExpandTimeNanos += System.nanoTime() - start;
+    }
+
+    private int compress(byte[] indices, boolean delta) {
+        if (mBuffer == null) {
+            // a literal run costs at most 5 more bytes than its indices, and breaks off only around a shorter run
+            mBuffer = new byte[mFrameSize * 2 + 16];
+        }
+        int length = 0;
+        int literalStart = 0;
+        int i = 0;
+        while (i < mFrameSize) {
+            int run = 0;
+            int type = RUN_LITERAL;
+            if (delta) {
+                while (i + run < mFrameSize && indices[i + run] == mReference[i + run]) {
+                    run++;
+                }
+                if (run >= MIN_COPY_RUN || i + run == mFrameSize && run > 0) {
+                    type = RUN_COPY;
+                }
+            }
+            if (type == RUN_LITERAL) {
+                run = 1;
+                while (i + run < mFrameSize && indices[i + run] == indices[i]) {
+                    run++;
+                }
+                if (run >= MIN_FILL_RUN) {
+                    type = RUN_FILL;
+                }
+            }
+            if (type == RUN_LITERAL) {
+                i++;
+                continue;
+            }
+            length = writeLiteral(indices, literalStart, i, length);
+            length = writeRunHeader(run, type, length);
+            if (type == RUN_FILL) {
+                mBuffer[length++] = indices[i];
+            }
+            i += run;
+            literalStart = i;
+        }
+        return writeLiteral(indices, literalStart, mFrameSize, length);
+    }
+
+    private int writeLiteral(byte[] indices, int start, int end, int length) {
+        if (end > start) {
+            length = writeRunHeader(end - start, RUN_LITERAL, length);
+            System.arraycopy(indices, start, mBuffer, length, end - start);
+            length += end - start;
+        }
+        return length;
+    }
+
+    private int writeRunHeader(int run, int type, int length) {
+        // variable length, 7 bits per byte
+        int header = run << 2 | type;
+        while ((header & ~0x7F) != 0) {
+            mBuffer[length++] = (byte) (header & 0x7F | 0x80);
+            header >>>= 7;
+        }
+        mBuffer[length++] = (byte) header;
+        return length;
+    }
+
+    /**
+     * Expands a frame over the previous one, copy runs leaving its indices in place.
+     */
+    private static void decompress(byte[] frame, byte[] indices) {
+        int position = 0;
+        int i = 0;
+        while (position < frame.length) {
+            int header = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = frame[position++];
+                header |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            int run = header >>> 2;
+            switch (header & 0x03) {
+                case RUN_FILL:
+                    Arrays.fill(indices, i, i + run, frame[position++]);
+                    break;
+                case RUN_LITERAL:
+                    System.arraycopy(frame, position, indices, i, run);
+                    position += run;
+                    break;
+                default:
+                    break;
+            }
+            i += run;
+        }
+    }
+
+    public synchronized int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Gets the number of bytes of the compressed frames.
+     *
+     * @return size in bytes, at most the budget
+     */
+    public synchronized int getByteCount() {
+        return mByteCount;
+    }
+
+    public int getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * Gets the size of the frames stored as plain indices, over their compressed size.
+     *
+     * @return compression ratio, 0 if no frame is stored
+     */
+    public synchronized float getCompressionRatio() {
+        return mByteCount > 0 ? (float) mFrameCount * mFrameSize / mByteCount : 0;
+    }
+
+    public synchronized int getExpandCount() {
+        return mExpandCount;
+    }
+
+    /**
+     * Gets the average time taken by {@link #expand(int, byte[])}.
+     *
+     * @return time in nanoseconds, 0 if no frame was expanded
+     */
+    public synchronized long getAverageExpandTimeNanos() {
+        return mExpandCount > 0 ? mExpandTimeNanos / mExpandCount : 0;
+    }
+}
@@ -0,0 +1,74 @@
+package works.langley.gifimagedecodersample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * GIF header, logical screen descriptor and global color table.
+ */
+public class GifHeader extends GifBlock {
+
+    public GifHeader(ByteBuffer buffer, int offset) {
+        super(buffer, offset);
+        // get size
+        size = 0x0D;
+        if (getGlobalColorTableFlag() != 0) {
+            size += getGlobalColorTableLength() * 3;
+        }
+    }
+
+    public String getSignature() {
+        return getString(0, 3);
+    }
+
+    public String getVersion() {
+        return getString(3, 3);
+    }
+
+    public int getWidth() {
+        return getShort(6);
+    }
+
+    public int getHeight() {
+        return getShort(8);
+    }
+
+    public int getGlobalColorTableFlag() {
+        return (getByte(10) & 0x80) >> 7;
+    }
+
+    public int getColorResolution() {
+        return (getByte(10) & 0x70) >> 4;
+    }
+
+    public int getSortFlag() {
+        return (getByte(10) & 0x08) >> 3;
+    }
+
+    public int getSizeOfGlobalColorTable() {
+        return (getByte(10) & 0x07);
+    }
+
+    public int getBackgroundColorIndex() {
+        return getByte(11);
+    }
+
+    public int getPixelAspectRatio() {
+        return getByte(12);
+    }
+
+    /**
+     * @return number of colors of the global color table, 0 if there is none
+     */
+    public int getGlobalColorTableLength() {
+        return getGlobalColorTableFlag() != 0 ? getColorTableLength(getSizeOfGlobalColorTable()) : 0;
+    }
+
+    /**
+     * Reads the global color table into a lookup table.
+     *
+     * @param colors receives the colors as opaque ARGB, 256 long; entries past the end of the table are set to 0
+     */
+    public void readGlobalColorTable(int[] colors) {
+        readColorTable(13, getGlobalColorTableLength(), colors);
+    }
+}
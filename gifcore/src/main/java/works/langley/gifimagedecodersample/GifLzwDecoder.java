@@ -0,0 +1,182 @@
+package works.langley.gifimagedecodersample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the LZW compressed image data of a GIF image block into color indices.
+ * <p/>
+ * The code tables are allocated once per instance and reused for every frame;
+ * an instance must not be shared between threads.
+ */
+public class GifLzwDecoder {
+    private static final int MAX_STACK_SIZE = 4096;
+    private static final int MAX_CODE_SIZE = 12;
+    private static final int NULL_CODE = -1;
+
+    private final short[] mPrefix = new short[MAX_STACK_SIZE];
+    private final byte[] mSuffix = new byte[MAX_STACK_SIZE];
+    private final byte[] mPixelStack = new byte[MAX_STACK_SIZE + 1];
+    private byte[] mData; // image data copied out of buffers without a backing array
+
+    /**
+     * Decodes image data stored as a sequence of sub-blocks in a buffer.
+     * Heap buffers are read in place; the data of other buffers (e.g. memory-mapped files)
+     * is first copied into an internal array that is reused between frames.
+     *
+     * @param data        buffer containing the image data
+     * @param offset      absolute offset of the first data sub-block
+     * @param minCodeSize LZW minimum code size
+     * @param pixels      destination of the color indices
+     * @param pixelCount  number of pixels to decode
+     * @return number of pixels actually decoded
+     * @see #decode(byte[], int, int, byte[], int)
+     */
+    public int decode(ByteBuffer data, int offset, int minCodeSize, byte[] pixels, int pixelCount) {
+        if (data.hasArray()) {
+            return decode(data.array(), data.arrayOffset() + offset, minCodeSize, pixels, pixelCount);
+        }
+        int end = offset;
+        int limit = data.limit();
+        while (end < limit) {
+            int blockSize = data.get(end) & 0xFF;
+            end += blockSize + 1;
+            if (blockSize == 0) {
+                break;
+            }
+        }
+        end = Math.min(end, limit);
+        int length = end - offset;
+        if (mData == null || mData.length < length) {
+            mData = new byte[length];
+        }
+        ByteBuffer source = data.duplicate();
+        source.position(offset);
+        source.get(mData, 0, length);
+        return decode(mData, 0, minCodeSize, pixels, pixelCount);
+    }
+
+    /**
+     * Decodes image data stored as a sequence of sub-blocks.
+     * Pixels that could not be decoded (truncated or corrupt data) are set to index 0.
+     *
+     * @param data        buffer containing the image data
+     * @param offset      offset of the first data sub-block (the byte after the LZW minimum code size)
+     * @param minCodeSize LZW minimum code size
+     * @param pixels      destination of the color indices
+     * @param pixelCount  number of pixels to decode
+     * @return number of pixels actually decoded
+     */
+    public int decode(byte[] data, int offset, int minCodeSize, byte[] pixels, int pixelCount) {
+        if (minCodeSize < 1 || minCodeSize >= MAX_CODE_SIZE) {
+            fill(pixels, 0, pixelCount);
+            return 0;
+        }
+        final short[] prefix = mPrefix;
+        final byte[] suffix = mSuffix;
+        final byte[] pixelStack = mPixelStack;
+
+        int clear = 1 << minCodeSize;
+        int endOfInformation = clear + 1;
+        int available = clear + 2;
+        int oldCode = NULL_CODE;
+        int codeSize = minCodeSize + 1;
+        int codeMask = (1 << codeSize) - 1;
+        for (int code = 0; code < clear; code++) {
+            prefix[code] = 0;
+            suffix[code] = (byte) code;
+        }
+
+        int limit = data.length;
+        int position = offset;
+        int blockRemaining = 0;
+        int datum = 0;
+        int bits = 0;
+        int first = 0;
+        int top = 0;
+        int pi = 0;
+
+        while (pi < pixelCount) {
+            if (top == 0) {
+                if (bits < codeSize) {
+                    // load bytes until there are enough bits for a code
+                    if (blockRemaining == 0) {
+                        if (position >= limit) {
+                            break;
+                        }
+                        blockRemaining = data[position++] & 0xFF;
+                        if (blockRemaining == 0) {
+                            // block terminator
+                            break;
+                        }
+                    }
+                    if (position >= limit) {
+                        break;
+                    }
+                    datum += (data[position++] & 0xFF) << bits;
+                    bits += 8;
+                    blockRemaining--;
+                    continue;
+                }
+
+                int code = datum & codeMask;
+                datum >>= codeSize;
+                bits -= codeSize;
+
+                if (code > available || code == endOfInformation) {
+                    break;
+                }
+                if (code == clear) {
+                    // reset decoder
+                    codeSize = minCodeSize + 1;
+                    codeMask = (1 << codeSize) - 1;
+                    available = clear + 2;
+                    oldCode = NULL_CODE;
+                    continue;
+                }
+                if (oldCode == NULL_CODE) {
+                    pixelStack[top++] = suffix[code];
+                    oldCode = code;
+                    first = code;
+                    continue;
+                }
+
+                int inCode = code;
+                if (code == available) {
+                    pixelStack[top++] = (byte) first;
+                    code = oldCode;
+                }
+                while (code > clear) {
+                    pixelStack[top++] = suffix[code];
+                    code = prefix[code];
+                }
+                first = suffix[code] & 0xFF;
+                pixelStack[top++] = (byte) first;
+
+                // add a new string to the table, unless it is full
+                if (available < MAX_STACK_SIZE) {
+                    prefix[available] = (short) oldCode;
+                    suffix[available] = (byte) first;
+                    available++;
+                    if ((available & codeMask) == 0 && available < MAX_STACK_SIZE) {
+                        codeSize++;
+                        codeMask += available;
+                    }
+                }
+                oldCode = inCode;
+            }
+
+            // pop a pixel off the pixel stack
+            top--;
+            pixels[pi++] = pixelStack[top];
+        }
+
+        fill(pixels, pi, pixelCount);
+        return pi;
+    }
+
+    private static void fill(byte[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            pixels[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package works.langley.gifimagedecodersample;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Size, frame count, frame delays and loop count of a GIF file, read by walking its block
+ * structure only: image data is skipped by length, no pixel is decoded.
+ */
+public class GifMetadata {
+    // Loop count: repeated forever.
+    public static final int LOOP_FOREVER = 0;
+    // Loop count: no NETSCAPE2.0 extension, played once.
+    public static final int LOOP_NONE = -1;
+
+    private int mStatus;
+    private String mVersion;
+    private int mWidth;
+    private int mHeight;
+    private int mFrameCount;
+    private int[] mDelays = new int[16];
+    private int mDuration;
+    private int mLoopCount = LOOP_NONE;
+    private boolean mInterlaced;
+    private boolean mTransparent;
+    private int mNextDelay; // of the next image block
+    private boolean mNextTransparent;
+
+    private final GifParser.Listener mParserListener = new GifParser.Listener() {
+        @Override
+        public boolean onHeader(GifHeader header) {
+            if (!header.getSignature().equals("GIF")) {
+                mStatus = GifParser.STATUS_FORMAT_ERROR;
+                return false;
+            }
+            mVersion = header.getVersion();
+            mWidth = header.getWidth();
+            mHeight = header.getHeight();
+            return true;
+        }
+
+        @Override
+        public void onGraphicControlExtension(GraphicControlExtension gcExt) {
+            mNextDelay = gcExt.getDelayTime() * 10;
+            mNextTransparent = gcExt.getTransparentColorFlag() != 0;
+        }
+
+        @Override
+        public void onApplicationExtension(ApplicationExtension appExt) {
+            if (appExt.isLoopingExtension()) {
+                mLoopCount = appExt.getLoopCount();
+            }
+        }
+
+        @Override
+        public void onImageBlock(ImageBlock imageBlock) {
+            if (mDelays.length <= mFrameCount) {
+                mDelays = Arrays.copyOf(mDelays, mDelays.length * 2);
+            }
+            int delay = GifDecoder.getDisplayDelay(mNextDelay);
+            mDelays[mFrameCount++] = delay;
+            mDuration += delay;
+            mInterlaced |= imageBlock.getInterlaceFlag() != 0;
+            mTransparent |= mNextTransparent;
+            mNextDelay = 0;
+            mNextTransparent = false;
+        }
+    };
+
+    private GifMetadata() {
+    }
+
+    /**
+     * Reads the metadata of a GIF file from a buffer, starting at its current position.
+     *
+     * @param buffer containing GIF file, e.g. a memory-mapped file.
+     * @return metadata, see {@link #getStatus()} for whether the file could be read
+     */
+    public static GifMetadata probe(ByteBuffer buffer) {
+        GifMetadata metadata = new GifMetadata();
+        metadata.setParseStatus(new GifParser().parse(buffer, metadata.mParserListener));
+        return metadata;
+    }
+
+    /**
+     * Reads the metadata of a GIF file from a byte array.
+     *
+     * @param data containing GIF file.
+     * @return metadata, see {@link #getStatus()} for whether the file could be read
+     */
+    public static GifMetadata probe(byte[] data) {
+        return probe(data != null ? ByteBuffer.wrap(data) : null);
+    }
+
+    /**
+     * Reads the metadata of a GIF file from a stream, skipping the image data without buffering it.
+     *
+     * @param is containing GIF file, closed once read
+     * @return metadata, see {@link #getStatus()} for whether the file could be read
+     */
+    public static GifMetadata probe(InputStream is) throws IOException {
+        GifMetadata metadata = new GifMetadata();
+        GifParser parser = new GifParser();
+        parser.setSkipImageData(true);
+        metadata.setParseStatus(parser.parse(is, metadata.mParserListener));
+        return metadata;
+    }
+
+    private void setParseStatus(int status) {
+        if (status != GifParser.STATUS_OK) {
+            mStatus = status;
+        }
+    }
+
+    /**
+     * Gets the status of the probe. Truncated files keep the metadata of the frames read so far.
+     *
+     * @return read status code (0 = no errors)
+     */
+    public int getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * @return "87a" or "89a", or null if the header could not be read
+     */
+    public String getVersion() {
+        return mVersion;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Gets display duration for specified frame, as played by the decoders.
+     *
+     * @param n int index of frame
+     * @return delay in milliseconds, or -1 if n is invalid
+     */
+    public int getDelay(int n) {
+        return n >= 0 && n < mFrameCount ? mDelays[n] : -1;
+    }
+
+    /**
+     * Gets the duration of one loop of the animation.
+     *
+     * @return duration in milliseconds
+     */
+    public int getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * Gets the number of times the animation is repeated, from the NETSCAPE2.0 extension.
+     *
+     * @return loop count, {@link #LOOP_FOREVER}, or {@link #LOOP_NONE} if the file has no loop count
+     */
+    public int getLoopCount() {
+        return mLoopCount;
+    }
+
+    /**
+     * Whether any frame is interlaced.
+     */
+    public boolean isInterlaced() {
+        return mInterlaced;
+    }
+
+    /**
+     * Whether any frame has a transparent color.
+     */
+    public boolean hasTransparency() {
+        return mTransparent;
+    }
+}
@@ -0,0 +1,111 @@
+package works.langley.gifimagedecodersample;
+
+/**
+ * Receives measurements of gifs being decoded and played, e.g. to forward them to telemetry.
+ * Every method does nothing: override the ones of interest and install the instance with
+ * {@link #setDefault(GifMetrics)}, or on a single decoder. Gifs are identified by their decoder,
+ * so measurements can be kept per gif as well as in aggregate.
+ * <p/>
+ * Methods are called on the threads doing the work, decoding threads included: they must be
+ * thread-safe and return quickly.
+ */
+public class GifMetrics {
+    private static volatile GifMetrics sDefault = new GifMetrics();
+
+    /**
+     * Gets the metrics used by decoders, views and caches that were not given any.
+     *
+     * @return default metrics, doing nothing unless replaced
+     */
+    public static GifMetrics getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * @param metrics metrics used from now on by default, or null to do nothing
+     */
+    public static void setDefault(GifMetrics metrics) {
+        sDefault = metrics != null ? metrics : new GifMetrics();
+    }
+
+    /**
+     * Called once a file has been read.
+     *
+     * @param gif           decoder of the gif
+     * @param readTimeNanos time taken to read the file, decoding included unless frames are decoded on demand
+     * @param frameCount    number of frames read
+     * @param status        read status code
+     */
+    public void onRead(Object gif, long readTimeNanos, int frameCount, int status) {
+    }
+
+    /**
+     * Called once the first frame can be retrieved from a decoder.
+     *
+     * @param gif       decoder of the gif
+     * @param timeNanos time since the start of the read
+     */
+    public void onFirstFrame(Object gif, long timeNanos) {
+    }
+
+    /**
+     * Called every time a frame has been decoded and composited.
+     *
+     * @param gif                decoder of the gif
+     * @param index              index of the frame
+     * @param decodeTimeNanos    time taken by LZW decoding, on any thread
+     * @param compositeTimeNanos time taken to look up the colors and composite the frame over the
+     *                           previous ones, done in a single pass straight into the canvas
+     */
+    public void onFrameDecoded(Object gif, int index, long decodeTimeNanos, long compositeTimeNanos) {
+    }
+
+    /**
+     * Called when decoding a frame failed with an exception, e.g. on a decode executor.
+     * The read goes on with the frame as decoded so far, and ends with a format error.
+     *
+     * @param gif   decoder of the gif
+     * @param index index of the frame
+     * @param error exception thrown
+     */
+    public void onFrameError(Object gif, int index, Throwable error) {
+    }
+
+    /**
+     * Called when a decoder allocates pixel buffers or takes bitmaps from a pool.
+     *
+     * @param gif       decoder of the gif
+     * @param byteCount size of the allocation in bytes
+     */
+    public void onBytesAllocated(Object gif, int byteCount) {
+    }
+
+    /**
+     * Called once a file has been read, with the bytes its frames hold at most while it is played.
+     *
+     * @param gif       decoder of the gif
+     * @param byteCount size in bytes
+     */
+    public void onFrameMemory(Object gif, int byteCount) {
+    }
+
+    /**
+     * Called when a view moves on to another frame while playing.
+     *
+     * @param gif          decoder of the gif
+     * @param index        index of the frame shown
+     * @param lateMillis   time since the frame was due
+     * @param droppedCount frames skipped since the previous one shown, because they were already over
+     */
+    public void onFrameShown(Object gif, int index, long lateMillis, int droppedCount) {
+    }
+
+    /**
+     * Called when a view looks up a decoded gif in its cache.
+     *
+     * @param key key of the gif
+     * @param hit whether the gif was cached
+     */
+    public void onCacheLookup(String key, boolean hit) {
+    }
+}
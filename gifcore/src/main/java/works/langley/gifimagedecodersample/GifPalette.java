@@ -0,0 +1,109 @@
+package works.langley.gifimagedecodersample;
+
+import java.util.Arrays;
+
+/**
+ * Palette of the composited frames of a GIF file: the colors of its global color table, plus
+ * transparent if the color table leaves room for it. Converts composited frames to 8-bit
+ * indices into the palette, and back to ARGB or RGB_565 pixels.
+ */
+public class GifPalette {
+    private static final int LOOKUP_SIZE = 512; // power of two, about twice the palette size
+
+    private final int[] mColors;
+    private final short[] mRgb565; // colors packed as RGB_565
+    private final short[] mLookup = new short[LOOKUP_SIZE]; // palette index + 1 by color hash
+
+    /**
+     * @param colorTable ARGB colors of the global color table, at most 256
+     */
+    public GifPalette(int[] colorTable) {
+        // transparent takes the last index if the color table leaves room for it
+        mColors = Arrays.copyOf(colorTable, colorTable.length < 256 ? colorTable.length + 1 : colorTable.length);
+        mRgb565 = new short[mColors.length];
+        GifCompositor.packRgb565(mColors, mRgb565, mColors.length);
+        for (int i = 0; i < mColors.length; i++) {
+            int slot = hashColor(mColors[i]);
+            while (mLookup[slot] != 0 && mColors[mLookup[slot] - 1] != mColors[i]) {
+                slot = (slot + 1) & (LOOKUP_SIZE - 1);
+            }
+            if (mLookup[slot] == 0) {
+                mLookup[slot] = (short) (i + 1);
+            }
+        }
+    }
+
+    public int size() {
+        return mColors.length;
+    }
+
+    /**
+     * Converts a composited frame to indices into the palette.
+     *
+     * @param pixels  colors of the frame
+     * @param indices receives the indices, as many as there are pixels
+     * @return false if the frame has a color missing from the palette
+     */
+    public boolean index(int[] pixels, byte[] indices) {
+        int color = 0;
+        int index = -1;
+        for (int i = 0; i < indices.length; i++) {
+            // neighboring pixels often share their color
+            if (index < 0 || pixels[i] != color) {
+                color = pixels[i];
+                index = indexOf(color);
+                if (index < 0) {
+                    return false;
+                }
+            }
+            indices[i] = (byte) index;
+        }
+        return true;
+    }
+
+    /**
+     * @param color ARGB color
+     * @return index of the color, or -1 if it is missing from the palette
+     */
+    public int indexOf(int color) {
+        int slot = hashColor(color);
+        while (mLookup[slot] != 0) {
+            int index = mLookup[slot] - 1;
+            if (mColors[index] == color) {
+                return index;
+            }
+            slot = (slot + 1) & (LOOKUP_SIZE - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Expands indices into ARGB pixels.
+     *
+     * @param indices indices of the frame
+     * @param pixels  receives the colors
+     * @param length  number of pixels
+     */
+    public void expand(byte[] indices, int[] pixels, int length) {
+        for (int i = 0; i < length; i++) {
+            pixels[i] = mColors[indices[i] & 0xFF];
+        }
+    }
+
+    /**
+     * Expands indices straight into RGB_565 pixels, transparent pixels black.
+     *
+     * @param indices indices of the frame
+     * @param rgb565  receives the packed colors
+     * @param length  number of pixels
+     */
+    public void expand(byte[] indices, short[] rgb565, int length) {
+        for (int i = 0; i < length; i++) {
+            rgb565[i] = mRgb565[indices[i] & 0xFF];
+        }
+    }
+
+    private static int hashColor(int color) {
+        return (color * 0x9E3779B1) >>> 23; // top 9 bits, LOOKUP_SIZE slots
+    }
+}
@@ -0,0 +1,411 @@
+package works.langley.gifimagedecodersample;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Walks the block structure of a GIF file and hands the blocks to a {@link Listener}.
+ */
+public class GifParser {
+    // File read status: No errors.
+    public static final int STATUS_OK = 0;
+    // File read status: Error decoding file (may be partially decoded)
+    public static final int STATUS_FORMAT_ERROR = 1;
+    // File read status: Unable to open source.
+    public static final int STATUS_OPEN_ERROR = 2;
+    // File read status: Reading cancelled with cancel().
+    public static final int STATUS_CANCELLED = 3;
+    // Trailer
+    private static final byte TRR_CODE = (byte) 0x3B;
+    // Image Block
+    private static final byte IMG_CODE = (byte) 0x2C;
+    // Extension
+    private static final byte EXT_CODE = (byte) 0x21;
+    // Graphic Control Extension
+    private static final byte GC_EXT = (byte) 0xF9;
+    // Application Extension
+    private static final byte APP_EXT = (byte) 0xFF;
+    // Comment Extension
+    private static final byte CMT_EXT = (byte) 0xFE;
+    // Plain Text Extension
+    private static final byte TXT_EXT = (byte) 0x01;
+    // Image data read before the first progress report, then growth between reports (1/4)
+    private static final int PROGRESS_MIN_BYTES = 4096;
+
+    private byte[] mBlockBuffer = new byte[1024]; // block currently being read from the stream
+    private boolean mRetainBlocks = false;
+    private boolean mSkipImageData = false;
+    private ProgressListener mProgressListener;
+    private volatile boolean mCancelled = false;
+
+    /**
+     * Receives the blocks of a GIF file as they are parsed.
+     */
+    public interface Listener {
+        /**
+         * @return false to stop parsing
+         */
+        boolean onHeader(GifHeader header);
+
+        void onGraphicControlExtension(GraphicControlExtension gcExt);
+
+        void onApplicationExtension(ApplicationExtension appExt);
+
+        void onImageBlock(ImageBlock imageBlock);
+    }
+
+    /**
+     * Receives the image data of image blocks while it is still being read from a stream,
+     * e.g. to show interlaced frames progressively.
+     */
+    public interface ProgressListener {
+        /**
+         * Called as the image data of an image block is read, each time it has grown by a quarter,
+         * before {@link Listener#onImageBlock(ImageBlock)}. The image block holds the sub-blocks
+         * read so far followed by a block terminator, and is only valid during the call.
+         *
+         * @param imageBlock image block read so far
+         * @param index      index of the image block in the file
+         * @return false to not be called again for this image block
+         */
+        boolean onImageData(ImageBlock imageBlock, int index);
+    }
+
+    /**
+     * When parsing a stream, blocks are read into a buffer reused for the next block.
+     * Listeners keeping image blocks after {@link Listener#onImageBlock(ImageBlock)} must
+     * enable this so each image block gets its own copy. Blocks parsed from a buffer
+     * always point into that buffer.
+     *
+     * @param retainBlocks true to copy image blocks read from a stream
+     */
+    public void setRetainBlocks(boolean retainBlocks) {
+        mRetainBlocks = retainBlocks;
+    }
+
+    /**
+     * When parsing a stream, skips the image data of image blocks instead of reading it into
+     * the block buffer, e.g. to read metadata with bounded allocation. Image blocks are then
+     * handed to the listener without their data, only the image descriptor and color table.
+     * Blocks parsed from a buffer are never copied, their data is always skipped by length.
+     *
+     * @param skipImageData true to skip the image data read from a stream
+     */
+    public void setSkipImageData(boolean skipImageData) {
+        mSkipImageData = skipImageData;
+    }
+
+    /**
+     * When parsing a stream, reports the image data read so far while image blocks are read.
+     * Blocks parsed from a buffer are already complete and never reported.
+     *
+     * @param listener listener, or null to remove it
+     */
+    public void setProgressListener(ProgressListener listener) {
+        mProgressListener = listener;
+    }
+
+    /**
+     * Stops a parse in progress on another thread as soon as the current block is done.
+     * The parse then returns {@link #STATUS_CANCELLED}, and so does any later parse.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Parses a GIF file in place from a buffer, starting at its current position.
+     * Blocks are only handed to the listener once they are known to be complete.
+     *
+     * @param buffer   containing GIF file
+     * @param listener listener receiving the blocks
+     * @return read status code (0 = no errors)
+     */
+    public int parse(ByteBuffer buffer, Listener listener) {
+        if (buffer == null) {
+            return STATUS_OPEN_ERROR;
+        }
+        return parseContents(buffer, listener);
+    }
+
+    /**
+     * Parses a GIF file straight off a stream in a single pass, then closes the stream.
+     *
+     * @param is       containing GIF file
+     * @param listener listener receiving the blocks
+     * @return read status code (0 = no errors)
+     */
+    public int parse(InputStream is, Listener listener) throws IOException {
+        if (is == null) {
+            return STATUS_OPEN_ERROR;
+        }
+        if (!(is instanceof BufferedInputStream)) {
+            is = new BufferedInputStream(is);
+        }
+        try {
+            return parseContents(is, listener);
+        } catch (EOFException e) {
+            // truncated file
+            return STATUS_FORMAT_ERROR;
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private int parseContents(ByteBuffer buffer, Listener listener) {
+        if (mCancelled) {
+            return STATUS_CANCELLED;
+        }
+        int position = buffer.position();
+        GifHeader header;
+        try {
+            header = new GifHeader(buffer, position);
+        } catch (IndexOutOfBoundsException e) {
+            // truncated file
+            return STATUS_FORMAT_ERROR;
+        }
+        if (position + header.size > buffer.limit() || !listener.onHeader(header)) {
+            return STATUS_FORMAT_ERROR;
+        }
+        position += header.size;
+
+        while (position < buffer.limit() && buffer.get(position) != TRR_CODE) {
+            if (mCancelled) {
+                return STATUS_CANCELLED;
+            }
+            GifBlock block = readBlock(buffer, position);
+            if (block == null) {
+                return STATUS_FORMAT_ERROR;
+            }
+            position += block.size;
+            if (block instanceof ImageBlock) {
+                listener.onImageBlock((ImageBlock) block);
+            } else if (block instanceof GraphicControlExtension) {
+                listener.onGraphicControlExtension((GraphicControlExtension) block);
+            } else if (block instanceof ApplicationExtension) {
+                listener.onApplicationExtension((ApplicationExtension) block);
+            }
+        }
+        // files ending without a trailer are truncated
+        return position < buffer.limit() ? STATUS_OK : STATUS_FORMAT_ERROR;
+    }
+
+    /**
+     * Reads the block at position in place, checking it lies within the buffer.
+     *
+     * @return block, a plain GifBlock for the extensions skipped; null if the block is unknown or truncated
+     */
+    private static GifBlock readBlock(ByteBuffer buffer, int position) {
+        GifBlock block;
+        try {
+            byte code = buffer.get(position);
+            if (code == IMG_CODE) {
+                // ImageBlock
+                block = new ImageBlock(buffer, position);
+            } else if (code == EXT_CODE) {
+                byte label = buffer.get(position + 1);
+                if (label == GC_EXT) {
+                    //GraphicControlExtension
+                    block = new GraphicControlExtension(buffer, position);
+                } else if (label == APP_EXT) {
+                    //ApplicationExtension
+                    block = new ApplicationExtension(buffer, position);
+                } else if (label == CMT_EXT) {
+                    //CommentExtension (skipped)
+                    block = new GifBlock(buffer, position);
+                    block.size = GifBlock.skipSubBlocks(buffer, position + 0x02) - position;
+                } else if (label == TXT_EXT) {
+                    //PlainTextExtension (skipped)
+                    block = new GifBlock(buffer, position);
+                    block.size = GifBlock.skipSubBlocks(buffer, position + 0x0F) - position;
+                } else {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // truncated file
+            return null;
+        }
+        return position + block.size <= buffer.limit() ? block : null;
+    }
+
+    private int parseContents(InputStream is, Listener listener) throws IOException {
+        if (mCancelled) {
+            return STATUS_CANCELLED;
+        }
+        // Header and Global Color Table
+        int position = readFixed(is, 0, 0x0D);
+        if ((mBlockBuffer[0x0A] & 0x80) != 0x00) {
+            position = readFixed(is, position, 3 << ((mBlockBuffer[0x0A] & 0x07) + 1));
+        }
+        if (!listener.onHeader(new GifHeader(ByteBuffer.wrap(Arrays.copyOf(mBlockBuffer, position)), 0))) {
+            return STATUS_FORMAT_ERROR;
+        }
+
+        int imageIndex = 0;
+        int code;
+        while ((code = is.read()) != (TRR_CODE & 0xFF)) {
+            if (code == -1) {
+                throw new EOFException();
+            }
+            if (mCancelled) {
+                return STATUS_CANCELLED;
+            }
+            mBlockBuffer[0] = (byte) code;
+            if (mBlockBuffer[0] == IMG_CODE) {
+                // ImageBlock
+                position = readFixed(is, 1, 0x09);
+                if ((mBlockBuffer[0x09] & 0x80) != 0x00) {
+                    position = readFixed(is, position, 3 << ((mBlockBuffer[0x09] & 0x07) + 1));
+                }
+                position = readFixed(is, position, 1); // LZW Minimum Code Size
+                if (mSkipImageData) {
+                    skipSubBlocks(is);
+                    ensureBlockBufferCapacity(position + 1);
+                    mBlockBuffer[position++] = 0x00; // block terminator
+                } else if (mProgressListener != null) {
+                    position = readImageData(is, position, imageIndex);
+                } else {
+                    position = readSubBlocks(is, position);
+                }
+                imageIndex++;
+                // the block buffer is reused, retained blocks need their own copy
+                byte[] bytes = mRetainBlocks ? Arrays.copyOf(mBlockBuffer, position) : mBlockBuffer;
+                listener.onImageBlock(new ImageBlock(ByteBuffer.wrap(bytes), 0));
+            } else if (mBlockBuffer[0] == EXT_CODE) {
+                position = readFixed(is, 1, 1);
+                if (mBlockBuffer[1] == GC_EXT) {
+                    //GraphicControlExtension
+                    position = readFixed(is, position, 6);
+                    listener.onGraphicControlExtension(new GraphicControlExtension(ByteBuffer.wrap(Arrays.copyOf(mBlockBuffer, position)), 0));
+                } else if (mBlockBuffer[1] == APP_EXT) {
+                    //ApplicationExtension
+                    position = readSubBlocks(is, readFixed(is, position, 12));
+                    listener.onApplicationExtension(new ApplicationExtension(ByteBuffer.wrap(Arrays.copyOf(mBlockBuffer, position)), 0));
+                } else if (mBlockBuffer[1] == CMT_EXT) {
+                    //CommentExtension (skipped)
+                    readSubBlocks(is, position);
+                } else if (mBlockBuffer[1] == TXT_EXT) {
+                    //PlainTextExtension (skipped)
+                    readSubBlocks(is, readFixed(is, position, 13));
+                } else {
+                    return STATUS_FORMAT_ERROR;
+                }
+            } else {
+                return STATUS_FORMAT_ERROR;
+            }
+        }
+        return STATUS_OK;
+    }
+
+    /**
+     * Reads length bytes into the block buffer at position.
+     *
+     * @return position following the bytes read
+     */
+    private int readFixed(InputStream is, int position, int length) throws IOException {
+        ensureBlockBufferCapacity(position + length);
+        int end = position + length;
+        while (position < end) {
+            int read = is.read(mBlockBuffer, position, end - position);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    /**
+     * Reads data sub-blocks, including the block terminator, into the block buffer at position.
+     *
+     * @return position following the block terminator
+     */
+    private int readSubBlocks(InputStream is, int position) throws IOException {
+        int blockSize;
+        do {
+            position = readFixed(is, position, 1);
+            blockSize = mBlockBuffer[position - 1] & 0xFF;
+            if (blockSize != 0x00) {
+                position = readFixed(is, position, blockSize);
+            }
+        } while (blockSize != 0x00);
+        return position;
+    }
+
+    /**
+     * Reads the image data of an image block into the block buffer at position, like
+     * {@link #readSubBlocks(InputStream, int)}, reporting it to the progress listener as it grows.
+     *
+     * @return position following the block terminator
+     */
+    private int readImageData(InputStream is, int position, int index) throws IOException {
+        int start = position;
+        int nextReport = PROGRESS_MIN_BYTES;
+        int blockSize;
+        do {
+            position = readFixed(is, position, 1);
+            blockSize = mBlockBuffer[position - 1] & 0xFF;
+            if (blockSize != 0x00) {
+                position = readFixed(is, position, blockSize);
+                int read = position - start;
+                if (read >= nextReport) {
+                    // terminated for now, the next sub-block overwrites the terminator
+                    ensureBlockBufferCapacity(position + 1);
+                    mBlockBuffer[position] = 0x00;
+                    if (mProgressListener.onImageData(new ImageBlock(ByteBuffer.wrap(mBlockBuffer), 0), index)) {
+                        nextReport = read + read / 4;
+                    } else {
+                        nextReport = Integer.MAX_VALUE;
+                    }
+                }
+            }
+        } while (blockSize != 0x00);
+        return position;
+    }
+
+    /**
+     * Skips data sub-blocks, including the block terminator, without reading them.
+     */
+    private void skipSubBlocks(InputStream is) throws IOException {
+        int blockSize;
+        while ((blockSize = is.read()) > 0) {
+            while (blockSize > 0) {
+                long skipped = is.skip(blockSize);
+                if (skipped <= 0) {
+                    // skip() may stop early, read() tells the end of the stream apart
+                    if (is.read() == -1) {
+                        throw new EOFException();
+                    }
+                    skipped = 1;
+                }
+                blockSize -= skipped;
+            }
+        }
+        if (blockSize == -1) {
+            throw new EOFException();
+        }
+    }
+
+    private void ensureBlockBufferCapacity(int capacity) {
+        if (mBlockBuffer.length < capacity) {
+            byte[] buffer = new byte[Math.max(capacity, mBlockBuffer.length * 2)];
+            System.arraycopy(mBlockBuffer, 0, buffer, 0, mBlockBuffer.length);
+            mBlockBuffer = buffer;
+        }
+    }
+}
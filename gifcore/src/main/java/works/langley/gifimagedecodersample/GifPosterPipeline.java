@@ -0,0 +1,239 @@
+package works.langley.gifimagedecodersample;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes one representative frame of each gif of a batch, e.g. for poster frames and thumbnails,
+ * on a pool of worker threads. Only the frames the chosen one depends on are decoded: from the
+ * last frame fully covering the ones before it up to the chosen frame, subsampled to the target
+ * size if one is set.
+ */
+public class GifPosterPipeline {
+    private final int mWorkerCount;
+    private int mFrameIndex = 0;
+    private int mTargetWidth;
+    private int mTargetHeight;
+    private Listener mListener;
+
+    /**
+     * Source of a gif, read on a worker thread.
+     */
+    public interface Source {
+        /**
+         * Reads the gif with the given decoder.
+         *
+         * @param decoder decoder, already configured
+         * @return read status code
+         */
+        int read(GifDecoder decoder) throws IOException;
+    }
+
+    /**
+     * Listener notified as the gifs of a batch are done.
+     */
+    public interface Listener {
+        /**
+         * Called on a worker thread once a gif is done, whether its frame could be decoded or not.
+         *
+         * @param result result of the gif
+         */
+        void onPosterFrame(Result result);
+    }
+
+    /**
+     * Poster frame of a gif, or why there is none.
+     */
+    public static class Result {
+        public final int position; // position of the source in the batch
+        public final Source source;
+        public int status = GifDecoder.STATUS_OPEN_ERROR; // read status code
+        public IOException error; // exception thrown while reading the source, if any
+
+        public int[] pixels; // ARGB pixels of the frame, transparent pixels 0; null if it could not be decoded
+        public int width; // of the frame, subsampled
+        public int height;
+        public int sampleSize;
+        public int frameIndex = -1; // the chosen frame, or the last one of shorter gifs
+        public int frameCount;
+
+        public long readTimeNanos; // parsing the file
+        public long decodeTimeNanos; // decoding and compositing the frames up to the chosen one
+
+        private Result(int position, Source source) {
+            this.position = position;
+            this.source = source;
+        }
+
+        public boolean isSuccessful() {
+            return pixels != null;
+        }
+    }
+
+    /**
+     * @param workerCount number of gifs decoded at the same time, e.g. the number of cores
+     */
+    public GifPosterPipeline(int workerCount) {
+        mWorkerCount = Math.max(1, workerCount);
+    }
+
+    /**
+     * Gets a source memory-mapping a file, so it is parsed in place off the Java heap.
+     *
+     * @param filePath path of the file
+     * @return source
+     */
+    public static Source fromFile(final String filePath) {
+        return new Source() {
+            @Override
+            public int read(GifDecoder decoder) throws IOException {
+                return decoder.read(Utils.mapFile(filePath));
+            }
+        };
+    }
+
+    /**
+     * @param data containing GIF file
+     * @return source
+     */
+    public static Source fromBytes(final byte[] data) {
+        return new Source() {
+            @Override
+            public int read(GifDecoder decoder) {
+                return decoder.read(data);
+            }
+        };
+    }
+
+    /**
+     * Sets the frame decoded, clamped to the last frame of shorter gifs.
+     *
+     * @param frameIndex index of the frame, 0 by default
+     */
+    public void setFrameIndex(int frameIndex) {
+        mFrameIndex = Math.max(0, frameIndex);
+    }
+
+    /**
+     * Subsamples the frames as much as possible while keeping them at least as large as a
+     * target size, see {@link GifDecoder#calculateSampleSize(int, int, int, int)}.
+     *
+     * @param targetWidth  width the frames are needed at, 0 for full size frames
+     * @param targetHeight height the frames are needed at, 0 for full size frames
+     */
+    public void setTargetSize(int targetWidth, int targetHeight) {
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+    }
+
+    /**
+     * @param listener listener, or null to remove it
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Decodes the frame of every source and waits for all of them.
+     * A source failing does not stop the others, its result holds the failure instead.
+     *
+     * @param sources sources of the gifs
+     * @return results, in the order of the sources
+     * @throws InterruptedException if interrupted while waiting, the gifs still pending are then dropped
+     */
+    public List<Result> run(List<? extends Source> sources) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(mWorkerCount, sources.size())));
+        // decoders reuse their canvas and buffers from one gif to the next of the same size
+        final ThreadLocal<GifDecoder> decoders = new ThreadLocal<GifDecoder>() {
+            @Override
+            protected GifDecoder initialValue() {
+                return new GifDecoder();
+            }
+        };
+        try {
+            ArrayList<Future<Result>> futures = new ArrayList<Future<Result>>(sources.size());
+            for (int i = 0; i < sources.size(); i++) {
+                final Result result = new Result(i, sources.get(i));
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        decode(decoders.get(), result);
+                        if (mListener != null) {
+                            mListener.onPosterFrame(result);
+                        }
+                        return result;
+                    }
+                }));
+            }
+            ArrayList<Result> results = new ArrayList<Result>(futures.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // thrown by the listener, or a bug
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Decodes the frame of a single gif, on the calling thread.
+     *
+     * @param source source of the gif
+     * @return result
+     */
+    public Result decode(Source source) {
+        Result result = new Result(0, source);
+        decode(new GifDecoder(), result);
+        return result;
+    }
+
+    private void decode(GifDecoder decoder, Result result) {
+        try {
+            if (mTargetWidth > 0 && mTargetHeight > 0) {
+                decoder.setTargetSize(mTargetWidth, mTargetHeight);
+            } else {
+                decoder.setSampleSize(1);
+            }
+            // keep the image data, for any frame to be decoded once read
+            decoder.setDecodeWhileReading(false);
+            long start = System.nanoTime();
+            result.status = result.source.read(decoder);
+            long read = System.nanoTime();
+            result.readTimeNanos = read - start;
+            result.frameCount = decoder.getFrameCount();
+            if (result.frameCount > 0) {
+                result.frameIndex = Math.min(mFrameIndex, result.frameCount - 1);
+                int[] pixels = decoder.getFramePixels(result.frameIndex);
+                result.width = decoder.getImageWidth();
+                result.height = decoder.getImageHeight();
+                result.sampleSize = decoder.getSampleSize();
+                if (pixels != null) {
+                    // the decoder reuses its canvas for the next gif
+                    result.pixels = Arrays.copyOf(pixels, result.width * result.height);
+                }
+                result.decodeTimeNanos = System.nanoTime() - read;
+                if (decoder.getStatus() != GifDecoder.STATUS_OK) {
+                    result.status = decoder.getStatus();
+                } else if (pixels == null) {
+                    // the source dropped the image data of the frame
+                    result.status = GifDecoder.STATUS_FORMAT_ERROR;
+                }
+            }
+        } catch (IOException e) {
+            result.status = GifDecoder.STATUS_OPEN_ERROR;
+            result.error = e;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package works.langley.gifimagedecodersample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Graphic control extension: disposal method, delay and transparency of the next frame.
+ */
+public class GraphicControlExtension extends GifBlock {
+
+    public GraphicControlExtension(ByteBuffer buffer, int offset) {
+        super(buffer, offset);
+        size = 8;
+    }
+
+    public int getExtensionIntroducer() {
+        return getByte(0);
+    }
+
+    public int getGraphicControlLabel() {
+        return getByte(1);
+    }
+
+    public int getBlockSize() {
+        return getByte(2);
+    }
+
+    public int getReserved() {
+        return (getByte(3) & 0xE0) >> 5;
+    }
+
+    public int getDisposalMothod() {
+        return (getByte(3) & 0x1C) >> 2;
+    }
+
+    public int getUserInputFlag() {
+        return (getByte(3) & 0x02) >> 1;
+    }
+
+    public int getTransparentColorFlag() {
+        return (getByte(3) & 0x01);
+    }
+
+    public int getDelayTime() {
+        return getShort(4);
+    }
+
+    public int getTransparentColorIndex() {
+        return getByte(6);
+    }
+}
@@ -0,0 +1,92 @@
+package works.langley.gifimagedecodersample;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Image descriptor, local color table and LZW compressed image data of a frame.
+ */
+public class ImageBlock extends GifBlock {
+
+    public ImageBlock(ByteBuffer buffer, int offset) {
+        super(buffer, offset);
+        //get size
+        size = skipSubBlocks(buffer, offset + getImageDataOffset()) - offset;
+    }
+
+    public int getImageSeparator() {
+        return getByte(0);
+    }
+
+    public int ImageLeftPosition() {
+        return getShort(1);
+    }
+
+    public int getImageTopPosition() {
+        return getShort(3);
+    }
+
+    public int getImageWidth() {
+        return getShort(5);
+    }
+
+    public int getImageHeight() {
+        return getShort(7);
+    }
+
+    public int getLocalColorTableFlag() {
+        return (getByte(9) & 0x80) >> 7;
+    }
+
+    public int getInterlaceFlag() {
+        return (getByte(9) & 0x40) >> 6;
+    }
+
+    public int getSortFlag() {
+        return (getByte(9) & 0x20) >> 5;
+    }
+
+    public int getReserved() {
+        return (getByte(9) & 0x18) >> 3;
+    }
+
+    public int getSizeOfLocalColorTable() {
+        return getByte(9) & 0x07;
+    }
+
+    /**
+     * @return number of colors of the local color table, 0 if there is none
+     */
+    public int getLocalColorTableLength() {
+        return getLocalColorTableFlag() != 0 ? getColorTableLength(getSizeOfLocalColorTable()) : 0;
+    }
+
+    /**
+     * Reads the local color table into a lookup table.
+     *
+     * @param colors receives the colors as opaque ARGB, 256 long; entries past the end of the table are set to 0
+     */
+    public void readLocalColorTable(int[] colors) {
+        readColorTable(10, getLocalColorTableLength(), colors);
+    }
+
+    public int hashLocalColorTable() {
+        return hashColorTable(10, getLocalColorTableLength());
+    }
+
+    /**
+     * Whether a lookup table holds the colors of the local color table.
+     *
+     * @param colors lookup table, 256 long
+     */
+    public boolean localColorTableEquals(int[] colors) {
+        return colorTableEquals(10, getLocalColorTableLength(), colors);
+    }
+
+    public int getLZWMinimumCodeSize() {
+        return getByte(getImageDataOffset() - 1);
+    }
+
+    public int getImageDataOffset() {
+        return 11 + getLocalColorTableLength() * 3;
+    }
+}
@@ -3,6 +3,9 @@ package works.langley.gifimagedecodersample;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 public class Utils {
     public static String toHex(int value, int length) {
@@ -33,4 +36,25 @@ public class Utils {
         }
         return bao.toByteArray();
     }
+
+    /**
+     * Maps a file into memory read-only. The mapping stays valid after this method
+     * returns and its pages are loaded by the OS on access, outside of the Java heap.
+     *
+     * @param filePath path of the file
+     * @return buffer over the file contents
+     */
+    public static MappedByteBuffer mapFile(String filePath) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filePath, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package works.langley.gifimagedecodersample;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class GifCompositorTest {
+    private static final int A = 0xFFAA0000;
+    private static final int B = 0xFF00BB00;
+    private static final int C = 0xFF0000CC;
+
+    private final GifCompositor mCompositor = new GifCompositor(4, 4);
+
+    @Test
+    public void framesWithoutDisposalStay() {
+        mCompositor.composite(fill(16, A), 0, 0, 4, 4, GifCompositor.DISPOSE_NONE, false);
+        mCompositor.composite(fill(4, B), 1, 1, 2, 2, GifCompositor.DISPOSE_UNSPECIFIED, false);
+        mCompositor.composite(fill(1, C), 3, 3, 1, 1, GifCompositor.DISPOSE_NONE, false);
+        assertCanvas(
+                A, A, A, A,
+                A, B, B, A,
+                A, B, B, A,
+                A, A, A, C);
+    }
+
+    @Test
+    public void disposeBackgroundClearsFrame() {
+        mCompositor.composite(fill(16, A), 0, 0, 4, 4, GifCompositor.DISPOSE_NONE, false);
+        mCompositor.composite(fill(4, B), 1, 1, 2, 2, GifCompositor.DISPOSE_BACKGROUND, false);
+        // disposed of only once the next frame is drawn
+        assertCanvas(
+                A, A, A, A,
+                A, B, B, A,
+                A, B, B, A,
+                A, A, A, A);
+        mCompositor.composite(fill(1, C), 0, 0, 1, 1, GifCompositor.DISPOSE_NONE, false);
+        assertCanvas(
+                C, A, A, A,
+                A, 0, 0, A,
+                A, 0, 0, A,
+                A, A, A, A);
+    }
+
+    @Test
+    public void disposePreviousRestoresCanvas() {
+        mCompositor.composite(fill(16, A), 0, 0, 4, 4, GifCompositor.DISPOSE_NONE, false);
+        mCompositor.composite(fill(1, C), 1, 1, 1, 1, GifCompositor.DISPOSE_NONE, false);
+        mCompositor.composite(fill(4, B), 1, 1, 2, 2, GifCompositor.DISPOSE_PREVIOUS, false);
+        assertCanvas(
+                A, A, A, A,
+                A, B, B, A,
+                A, B, B, A,
+                A, A, A, A);
+        mCompositor.composite(fill(1, C), 3, 3, 1, 1, GifCompositor.DISPOSE_NONE, false);
+        assertCanvas(
+                A, A, A, A,
+                A, C, A, A,
+                A, A, A, A,
+                A, A, A, C);
+    }
+
+    @Test
+    public void disposePreviousRestoresUnderTransparentFrame() {
+        mCompositor.composite(fill(16, A), 0, 0, 4, 4, GifCompositor.DISPOSE_NONE, false);
+        mCompositor.composite(new int[]{B, 0, 0, B}, 0, 0, 2, 2, GifCompositor.DISPOSE_PREVIOUS, true);
+        assertCanvas(
+                B, A, A, A,
+                A, B, A, A,
+                A, A, A, A,
+                A, A, A, A);
+        mCompositor.composite(new int[]{0, C}, 2, 0, 2, 1, GifCompositor.DISPOSE_PREVIOUS, true);
+        assertCanvas(
+                A, A, A, C,
+                A, A, A, A,
+                A, A, A, A,
+                A, A, A, A);
+        mCompositor.composite(fill(1, C), 0, 3, 1, 1, GifCompositor.DISPOSE_NONE, false);
+        assertCanvas(
+                A, A, A, A,
+                A, A, A, A,
+                A, A, A, A,
+                C, A, A, A);
+    }
+
+    @Test
+    public void disposalIsClippedToCanvas() {
+        mCompositor.composite(fill(16, A), 0, 0, 4, 4, GifCompositor.DISPOSE_NONE, false);
+        mCompositor.composite(fill(9, B), 2, 2, 3, 3, GifCompositor.DISPOSE_BACKGROUND, false);
+        assertCanvas(
+                A, A, A, A,
+                A, A, A, A,
+                A, A, B, B,
+                A, A, B, B);
+        mCompositor.composite(fill(4, C), 3, 0, 2, 2, GifCompositor.DISPOSE_PREVIOUS, false);
+        assertCanvas(
+                A, A, A, C,
+                A, A, A, C,
+                A, A, 0, 0,
+                A, A, 0, 0);
+        mCompositor.composite(fill(1, B), 0, 0, 1, 1, GifCompositor.DISPOSE_NONE, false);
+        assertCanvas(
+                B, A, A, A,
+                A, A, A, A,
+                A, A, 0, 0,
+                A, A, 0, 0);
+    }
+
+    @Test
+    public void framesOutsideCanvasAreIgnored() {
+        mCompositor.composite(fill(16, A), 0, 0, 4, 4, GifCompositor.DISPOSE_NONE, false);
+        mCompositor.composite(fill(4, B), 5, 2, 2, 2, GifCompositor.DISPOSE_BACKGROUND, false);
+        mCompositor.composite(fill(4, B), 1, 6, 2, 2, GifCompositor.DISPOSE_PREVIOUS, false);
+        mCompositor.composite(fill(1, C), 0, 0, 1, 1, GifCompositor.DISPOSE_NONE, false);
+        assertCanvas(
+                C, A, A, A,
+                A, A, A, A,
+                A, A, A, A,
+                A, A, A, A);
+    }
+
+    @Test
+    public void resetClearsCanvasAndPendingDisposal() {
+        mCompositor.composite(fill(16, A), 0, 0, 4, 4, GifCompositor.DISPOSE_PREVIOUS, false);
+        mCompositor.reset();
+        assertCanvas(new int[16]);
+        mCompositor.composite(fill(4, B), 0, 0, 2, 2, GifCompositor.DISPOSE_NONE, false);
+        assertCanvas(
+                B, B, 0, 0,
+                B, B, 0, 0,
+                0, 0, 0, 0,
+                0, 0, 0, 0);
+    }
+
+    private void assertCanvas(int... expected) {
+        assertArrayEquals(expected, mCompositor.getPixels());
+    }
+
+    private static int[] fill(int length, int color) {
+        int[] colors = new int[length];
+        Arrays.fill(colors, color);
+        return colors;
+    }
+}
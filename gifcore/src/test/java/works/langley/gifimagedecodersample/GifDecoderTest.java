@@ -0,0 +1,454 @@
+package works.langley.gifimagedecodersample;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GifDecoderTest {
+    private static final int[] PALETTE = {0x000000, 0xFF0000, 0x00FF00, 0x0000FF};
+    private static final int K = 0xFF000000;
+    private static final int R = 0xFFFF0000;
+    private static final int G = 0xFF00FF00;
+    private static final int B = 0xFF0000FF;
+
+    // canvas of each frame of ANIMATION
+    static final int[][] FRAMES = {
+            {K, K, K, K,
+             K, K, K, K,
+             K, K, K, K},
+            {K, K, K, K,
+             K, R, K, K,
+             K, K, G, K},
+            {B, K, K, K,
+             K, 0, 0, K,
+             K, 0, 0, K},
+            {B, K, G, G,
+             K, 0, 0, K,
+             K, 0, 0, K},
+            {B, K, K, K,
+             K, 0, 0, K,
+             K, 0, 0, R},
+    };
+
+    // frames of 100 to 500 ms, the second disposed of to the background, the fourth to the previous frame
+    static final byte[] ANIMATION = new GifWriter(4, 3, PALETTE)
+            .loop(3)
+            .control(10, GifCompositor.DISPOSE_NONE, -1)
+            .frame(0, 0, 4, 3, new byte[12], false)
+            .control(20, GifCompositor.DISPOSE_BACKGROUND, 0)
+            .frame(1, 1, 2, 2, new byte[]{1, 0, 0, 2}, true)
+            .control(30, GifCompositor.DISPOSE_NONE, -1)
+            .frame(0, 0, 1, 1, new byte[]{3}, false)
+            .control(40, GifCompositor.DISPOSE_PREVIOUS, -1)
+            .frame(2, 0, 2, 1, new byte[]{2, 2}, false)
+            .control(50, GifCompositor.DISPOSE_NONE, -1)
+            .frame(3, 2, 1, 1, new byte[]{1}, false)
+            .toByteArray();
+
+    @Test
+    public void compositesFrames() {
+        GifDecoder decoder = new GifDecoder();
+        assertEquals(GifDecoder.STATUS_OK, decoder.read(ANIMATION));
+        assertEquals(4, decoder.getWidth());
+        assertEquals(3, decoder.getHeight());
+        assertEquals(FRAMES.length, decoder.getFrameCount());
+        assertEquals(3, decoder.getLoopCount());
+        for (int i = 0; i < FRAMES.length; i++) {
+            assertArrayEquals("frame " + i, FRAMES[i], decoder.getFramePixels(i));
+        }
+        assertNull(decoder.getFramePixels(FRAMES.length));
+    }
+
+    @Test
+    public void compositesFramesOutOfOrder() {
+        GifDecoder decoder = new GifDecoder();
+        decoder.read(ByteBuffer.wrap(ANIMATION));
+        for (int i : new int[]{4, 1, 3, 3, 0, 2, 4}) {
+            assertArrayEquals("frame " + i, FRAMES[i], decoder.getFramePixels(i));
+        }
+    }
+
+    @Test
+    public void compositesFramesReadFromStream() throws IOException {
+        GifDecoder decoder = new GifDecoder();
+        assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(ANIMATION)));
+        for (int i = FRAMES.length - 1; i >= 0; i--) {
+            assertArrayEquals("frame " + i, FRAMES[i], decoder.getFramePixels(i));
+        }
+    }
+
+    @Test
+    public void clearsCanvasReusedForNextFile() {
+        GifDecoder decoder = new GifDecoder();
+        decoder.read(ANIMATION);
+        int[] canvas = decoder.getFramePixels(4);
+        // a file of the same size, its only frame not covering the canvas
+        decoder.read(new GifWriter(4, 3, PALETTE)
+                .frame(0, 0, 1, 1, new byte[]{2}, false)
+                .toByteArray());
+        int[] pixels = decoder.getFramePixels(0);
+        assertTrue(pixels == canvas);
+        assertArrayEquals(new int[]{G, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, pixels);
+    }
+
+    @Test
+    public void matchesSpecReference() {
+        Random random = new Random(13);
+        for (int file = 0; file < 20; file++) {
+            int width = 1 + random.nextInt(24);
+            int height = 1 + random.nextInt(24);
+            GifWriter writer = new GifWriter(width, height, PALETTE);
+            int frameCount = 1 + random.nextInt(40);
+            int[][] expected = new int[frameCount][];
+            int[] canvas = new int[width * height];
+            int[] saved = null;
+            int[] disposeRect = null;
+            int dispose = GifCompositor.DISPOSE_NONE;
+            for (int n = 0; n < frameCount; n++) {
+                // frames may extend past the logical screen
+                int left = random.nextInt(width + 2);
+                int top = random.nextInt(height + 2);
+                int iw = 1 + random.nextInt(width);
+                int ih = 1 + random.nextInt(height);
+                byte[] indices = new byte[iw * ih];
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = (byte) random.nextInt(PALETTE.length);
+                }
+                int transparentIndex = random.nextBoolean() ? random.nextInt(PALETTE.length) : -1;
+
+                // dispose of the previous frame, then draw this one, pixel by pixel
+                if (dispose == GifCompositor.DISPOSE_BACKGROUND) {
+                    fill(canvas, width, disposeRect, 0);
+                } else if (dispose == GifCompositor.DISPOSE_PREVIOUS) {
+                    canvas = saved;
+                }
+                dispose = random.nextInt(4);
+                disposeRect = new int[]{left, top, left + iw, top + ih};
+                saved = Arrays.copyOf(canvas, canvas.length);
+                for (int y = 0; y < ih; y++) {
+                    for (int x = 0; x < iw; x++) {
+                        int index = indices[y * iw + x];
+                        if (index != transparentIndex && left + x < width && top + y < height) {
+                            canvas[(top + y) * width + left + x] = 0xFF000000 | PALETTE[index];
+                        }
+                    }
+                }
+                expected[n] = Arrays.copyOf(canvas, canvas.length);
+                writer.control(random.nextInt(5), dispose, transparentIndex)
+                        .frame(left, top, iw, ih, indices, random.nextBoolean());
+            }
+
+            GifDecoder decoder = new GifDecoder();
+            assertEquals(GifDecoder.STATUS_OK, decoder.read(writer.toByteArray()));
+            assertEquals(frameCount, decoder.getFrameCount());
+            for (int n = 0; n < frameCount; n++) {
+                assertArrayEquals("file " + file + " frame " + n, expected[n], decoder.getFramePixels(n));
+            }
+            for (int i = 0; i < 10; i++) {
+                int n = random.nextInt(frameCount);
+                assertArrayEquals("file " + file + " frame " + n, expected[n], decoder.getFramePixels(n));
+            }
+        }
+    }
+
+    @Test
+    public void decodesInParallelLikeSerially() throws IOException {
+        byte[] gif = randomAnimation(new Random(19), 40, 60, 50);
+        GifDecoder serial = new GifDecoder();
+        assertEquals(GifDecoder.STATUS_OK, serial.read(gif));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            RecordingDecoder fromBuffer = new RecordingDecoder(executor);
+            assertEquals(GifDecoder.STATUS_OK, fromBuffer.read(gif));
+            RecordingDecoder fromStream = new RecordingDecoder(executor);
+            assertEquals(GifDecoder.STATUS_OK, fromStream.read(new ByteArrayInputStream(gif)));
+            assertEquals(serial.getFrameCount(), fromBuffer.frames.size());
+            assertEquals(serial.getFrameCount(), fromStream.frames.size());
+            for (int i = 0; i < serial.getFrameCount(); i++) {
+                int[] expected = serial.getFramePixels(i);
+                assertArrayEquals("frame " + i, expected, fromBuffer.frames.get(i));
+                assertArrayEquals("frame " + i, expected, fromStream.frames.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void streamErrorsDropFramesStillDecoding() {
+        final byte[] gif = randomAnimation(new Random(7), 40, 30, 8);
+        final CountDownLatch failed = new CountDownLatch(1);
+        ExecutorService executor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected void beforeExecute(Thread t, Runnable r) {
+                // frames are still decoding when the stream fails
+                try {
+                    failed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try {
+            RecordingDecoder decoder = new RecordingDecoder(executor);
+            // fails after the first two frames
+            InputStream is = new FilterInputStream(new ByteArrayInputStream(gif)) {
+                private int mRead;
+
+                @Override
+                public int read() throws IOException {
+                    checkRead(1);
+                    return super.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    checkRead(len);
+                    return super.read(b, off, Math.min(len, 64));
+                }
+
+                private void checkRead(int length) throws IOException {
+                    mRead += Math.min(length, 64);
+                    if (mRead > gif.length / 4) {
+                        failed.countDown();
+                        throw new IOException();
+                    }
+                }
+            };
+            try {
+                decoder.read(is);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+            int frameCount = decoder.getFrameCount();
+            assertEquals(0, frameCount);
+            assertEquals(frameCount, decoder.frames.size());
+            // frames read but not published are gone
+            assertFalse(decoder.isOpaque(frameCount));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void frameErrorsAreReported() {
+        // decodes every frame by throwing
+        ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+                return new FutureTask<T>(new Callable<T>() {
+                    @Override
+                    public T call() {
+                        throw new IllegalStateException();
+                    }
+                });
+            }
+        };
+        final List<Integer> errors = new ArrayList<Integer>();
+        try {
+            GifDecoder decoder = new RecordingDecoder(executor);
+            decoder.setMetrics(new GifMetrics() {
+                @Override
+                public void onFrameError(Object gif, int index, Throwable error) {
+                    assertTrue(error instanceof IllegalStateException);
+                    errors.add(index);
+                }
+            });
+            assertEquals(GifDecoder.STATUS_FORMAT_ERROR, decoder.read(ANIMATION));
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4), errors);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void framesCanBeCopiedWhileReading() throws InterruptedException {
+        byte[] gif = randomAnimation(new Random(20), 40, 60, 200);
+        final GifDecoder serial = new GifDecoder();
+        serial.read(gif);
+        final GifDecoder decoder = new GifDecoder();
+        decoder.setDecodeWhileReading(true);
+        final AtomicInteger bad = new AtomicInteger();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                Random random = new Random(21);
+                while (!done.get()) {
+                    int[] pixels = null;
+                    int n;
+                    synchronized (decoder) {
+                        n = decoder.getFrameCount() - 1;
+                        if (n >= 0) {
+                            n = random.nextInt(n + 1);
+                            int[] frame = decoder.getFramePixels(n);
+                            pixels = Arrays.copyOf(frame, frame.length);
+                        }
+                    }
+                    if (pixels != null && !Arrays.equals(serial.getFramePixels(n), pixels)) {
+                        bad.incrementAndGet();
+                    }
+                }
+            }
+        };
+        reader.start();
+        decoder.read(gif);
+        done.set(true);
+        reader.join();
+        assertEquals(0, bad.get());
+    }
+
+    @Test
+    public void previewsInterlacedFirstFrame() throws IOException {
+        final int size = 256;
+        byte[] indices = new byte[size * size];
+        Random random = new Random(25);
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = (byte) random.nextInt(PALETTE.length);
+        }
+        byte[] gif = new GifWriter(size, size, PALETTE)
+                .frame(0, 0, size, size, indices, true)
+                .toByteArray();
+        final List<int[]> previews = new ArrayList<int[]>();
+        final List<Integer> passes = new ArrayList<Integer>();
+        GifDecoder decoder = new GifDecoder() {
+            @Override
+            protected void onPreview(int[] pixels, int previewPasses) {
+                assertEquals(0, getFrameCount());
+                previews.add(Arrays.copyOf(pixels, pixels.length));
+                passes.add(previewPasses);
+            }
+        };
+        decoder.setPreviewFirstFrame(true);
+        assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(gif)));
+        assertFalse(previews.isEmpty());
+        int[] frame = decoder.getFramePixels(0);
+        for (int p = 0; p < previews.size(); p++) {
+            int pass = passes.get(p);
+            assertTrue(pass >= 1 && pass <= 2 && (p == 0 || pass > passes.get(p - 1)));
+            // rows of the passes read so far, every 8th row after the first one, every 4th after the second
+            int step = 8 >> (pass - 1);
+            for (int y = 0; y < size; y++) {
+                int row = y / step * step;
+                assertArrayEquals("pass " + pass + " row " + y, Arrays.copyOfRange(frame, row * size, (row + 1) * size),
+                        Arrays.copyOfRange(previews.get(p), y * size, (y + 1) * size));
+            }
+        }
+
+        // gifs read from a buffer are decoded right away
+        previews.clear();
+        decoder.read(gif);
+        assertTrue(previews.isEmpty());
+    }
+
+    @Test
+    public void findsFrameShownAtTime() {
+        GifDecoder decoder = new GifDecoder();
+        decoder.read(ANIMATION);
+        assertEquals(1500, decoder.getDuration());
+        assertEquals(0, decoder.getFrameStartTime(0));
+        assertEquals(300, decoder.getFrameStartTime(2));
+        assertEquals(-1, decoder.getFrameStartTime(5));
+
+        assertEquals(0, decoder.getFrameIndexAt(-10));
+        assertEquals(0, decoder.getFrameIndexAt(0));
+        assertEquals(0, decoder.getFrameIndexAt(99));
+        // a frame starts as soon as the previous one ends
+        assertEquals(1, decoder.getFrameIndexAt(100));
+        assertEquals(1, decoder.getFrameIndexAt(299));
+        assertEquals(2, decoder.getFrameIndexAt(300));
+        assertEquals(3, decoder.getFrameIndexAt(999));
+        assertEquals(4, decoder.getFrameIndexAt(1000));
+        assertEquals(4, decoder.getFrameIndexAt(1499));
+        // clamped to the last frame
+        assertEquals(4, decoder.getFrameIndexAt(1500));
+        assertEquals(4, decoder.getFrameIndexAt(Long.MAX_VALUE));
+        for (int i = 0; i < decoder.getFrameCount(); i++) {
+            assertEquals(i, decoder.getFrameIndexAt(decoder.getFrameStartTime(i)));
+        }
+    }
+
+    @Test
+    public void noFrameShownBeforeReading() {
+        assertEquals(-1, new GifDecoder().getFrameIndexAt(0));
+    }
+
+    @Test
+    public void shortDelaysArePlayedSlower() {
+        assertEquals(100, GifDecoder.getDisplayDelay(0));
+        assertEquals(100, GifDecoder.getDisplayDelay(10));
+        assertEquals(20, GifDecoder.getDisplayDelay(20));
+        assertEquals(500, GifDecoder.getDisplayDelay(500));
+    }
+
+    /**
+     * Gets an animation of opaque frames covering the canvas, so each can be decoded on its own.
+     */
+    private static byte[] randomAnimation(Random random, int width, int height, int frameCount) {
+        GifWriter writer = new GifWriter(width, height, PALETTE);
+        for (int n = 0; n < frameCount; n++) {
+            byte[] indices = new byte[width * height];
+            for (int i = 0; i < indices.length; i++) {
+                // runs of colors, for LZW codes of all lengths
+                indices[i] = (byte) (i / (1 + random.nextInt(8)) % PALETTE.length);
+            }
+            writer.control(random.nextInt(5), random.nextInt(2), -1)
+                    .frame(0, 0, width, height, indices, random.nextBoolean());
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes frames on an executor while reading, keeping a copy of each frame read.
+     */
+    private static class RecordingDecoder extends GifDecoder {
+        final List<int[]> frames = new ArrayList<int[]>();
+
+        RecordingDecoder(ExecutorService executor) {
+            setDecodeWhileReading(true);
+            setDecodeExecutor(executor);
+        }
+
+        @Override
+        protected void onFrameRead(int index) {
+            int[] pixels = getFramePixels(index);
+            frames.add(Arrays.copyOf(pixels, pixels.length));
+        }
+    }
+
+    private static void fill(int[] canvas, int width, int[] rect, int color) {
+        int height = canvas.length / width;
+        for (int y = rect[1]; y < Math.min(rect[3], height); y++) {
+            for (int x = rect[0]; x < Math.min(rect[2], width); x++) {
+                canvas[y * width + x] = color;
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package works.langley.gifimagedecodersample;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GifFrameDecoderTest {
+    private static final int[] COLOR_TABLE = new int[GifColorTables.LOOKUP_TABLE_LENGTH];
+
+    static {
+        for (int i = 0; i < COLOR_TABLE.length; i++) {
+            COLOR_TABLE[i] = 0xFF000000 | i;
+        }
+    }
+
+    private final GifFrameDecoder mDecoder = new GifFrameDecoder();
+
+    @Test
+    public void deinterlacesShortFrames() {
+        // frames shorter than 5 rows have passes without any row
+        for (int height = 1; height <= 7; height++) {
+            assertDeinterlaces(3, height);
+        }
+    }
+
+    @Test
+    public void deinterlacesFrames() {
+        for (int height = 8; height <= 33; height++) {
+            assertDeinterlaces(5, height);
+        }
+    }
+
+    @Test
+    public void interlacedFramesDecodeLikeProgressiveOnes() {
+        byte[] indices = GifLzwDecoderTest.randomIndices(13 * 11, 256);
+        int[] progressive = new int[indices.length];
+        int[] interlaced = new int[indices.length];
+        assertTrue(mDecoder.decode(imageBlock(13, 11, indices, false), COLOR_TABLE, -1, progressive));
+        assertTrue(mDecoder.decode(imageBlock(13, 11, indices, true), COLOR_TABLE, -1, interlaced));
+        assertArrayEquals(progressive, interlaced);
+        assertEquals(COLOR_TABLE[indices[0] & 0xFF], progressive[0]);
+    }
+
+    @Test
+    public void transparentPixelsAreZero() {
+        byte[] indices = {1, 2, 3, 2, 1, 2};
+        int[] colors = new int[indices.length];
+        mDecoder.decode(imageBlock(3, 2, indices, false), COLOR_TABLE, 2, colors);
+        assertArrayEquals(new int[]{COLOR_TABLE[1], 0, COLOR_TABLE[3], 0, COLOR_TABLE[1], 0}, colors);
+    }
+
+    @Test
+    public void truncatedFramesAreReported() {
+        byte[] indices = GifLzwDecoderTest.randomIndices(40 * 40, 256);
+        byte[] block = GifWriter.imageBlock(0, 0, 40, 40, indices, false, 8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(block.length);
+        buffer.put(block);
+        ImageBlock imageBlock = new ImageBlock(buffer, 0);
+        // only the first half of the image data has been read
+        buffer.limit(block.length / 2);
+        int[] colors = new int[indices.length];
+        assertFalse(mDecoder.decode(imageBlock, COLOR_TABLE, -1, colors));
+        // pixels not decoded are index 0
+        assertEquals(COLOR_TABLE[0], colors[colors.length - 1]);
+    }
+
+    @Test
+    public void subsamplesFrames() {
+        byte[] indices = GifLzwDecoderTest.randomIndices(7 * 5, 256);
+        int[] colors = new int[4 * 3];
+        mDecoder.decode(imageBlock(7, 5, indices, true), COLOR_TABLE, -1, 2, colors);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 4; x++) {
+                assertEquals(COLOR_TABLE[indices[y * 2 * 7 + x * 2] & 0xFF], colors[y * 4 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void countsCompletePasses() {
+        ImageBlock imageBlock = imageBlock(2, 16, new byte[32], true);
+        // passes of 2, 2, 4 and 8 rows
+        assertEquals(0, GifFrameDecoder.getCompletePasses(imageBlock, 3));
+        assertEquals(1, GifFrameDecoder.getCompletePasses(imageBlock, 4));
+        assertEquals(2, GifFrameDecoder.getCompletePasses(imageBlock, 8));
+        assertEquals(3, GifFrameDecoder.getCompletePasses(imageBlock, 16));
+        assertEquals(GifFrameDecoder.INTERLACE_PASSES, GifFrameDecoder.getCompletePasses(imageBlock, 32));
+        assertEquals(0, GifFrameDecoder.getCompletePasses(imageBlock(2, 16, new byte[32], false), 30));
+    }
+
+    /**
+     * Decodes an interlaced frame whose rows each have their own index, checking every row lands in place.
+     */
+    private void assertDeinterlaces(int width, int height) {
+        byte[] indices = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            Arrays.fill(indices, y * width, (y + 1) * width, (byte) (y + 1));
+        }
+        int[] colors = new int[width * height];
+        assertTrue(mDecoder.decode(imageBlock(width, height, indices, true), COLOR_TABLE, -1, colors));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals("row " + y + " of " + height, COLOR_TABLE[y + 1], colors[y * width + x]);
+            }
+        }
+    }
+
+    private static ImageBlock imageBlock(int width, int height, byte[] indices, boolean interlaced) {
+        return new ImageBlock(ByteBuffer.wrap(GifWriter.imageBlock(0, 0, width, height, indices, interlaced, 8)), 0);
+    }
+}
@@ -0,0 +1,135 @@
+package works.langley.gifimagedecodersample;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GifFrameStoreTest {
+    private static final int FRAME_SIZE = 32 * 32;
+
+    @Test
+    public void expandsFramesInOrder() {
+        byte[][] frames = animation(40);
+        GifFrameStore store = store(frames);
+        assertEquals(frames.length, store.getFrameCount());
+        byte[] indices = new byte[FRAME_SIZE];
+        for (int loop = 0; loop < 2; loop++) {
+            for (int i = 0; i < frames.length; i++) {
+                store.expand(i, indices);
+                assertArrayEquals("frame " + i, frames[i], indices);
+            }
+        }
+    }
+
+    @Test
+    public void expandsFramesOutOfOrder() {
+        byte[][] frames = animation(40);
+        GifFrameStore store = store(frames);
+        byte[] indices = new byte[FRAME_SIZE];
+        Random random = new Random(1);
+        for (int n = 0; n < 200; n++) {
+            int i = random.nextInt(frames.length);
+            store.expand(i, indices);
+            assertArrayEquals("frame " + i, frames[i], indices);
+        }
+    }
+
+    @Test
+    public void compressesUnchangedRegions() {
+        byte[][] frames = animation(40);
+        GifFrameStore store = store(frames);
+        assertTrue(store.getCompressionRatio() > 4);
+    }
+
+    @Test
+    public void roundTripsNoise() {
+        Random random = new Random(2);
+        byte[][] frames = new byte[5][FRAME_SIZE];
+        for (byte[] frame : frames) {
+            random.nextBytes(frame);
+        }
+        GifFrameStore store = store(frames);
+        byte[] indices = new byte[FRAME_SIZE];
+        for (int i = frames.length - 1; i >= 0; i--) {
+            store.expand(i, indices);
+            assertArrayEquals(frames[i], indices);
+        }
+    }
+
+    @Test
+    public void framesOverBudgetAreNotStored() {
+        Random random = new Random(3);
+        byte[][] frames = new byte[3][FRAME_SIZE];
+        for (byte[] frame : frames) {
+            random.nextBytes(frame);
+        }
+        GifFrameStore store = new GifFrameStore(FRAME_SIZE, FRAME_SIZE * 2);
+        assertTrue(store.put(0, frames[0]));
+        assertFalse(store.put(1, frames[1]) && store.put(2, frames[2]));
+        assertTrue(store.contains(0));
+        assertFalse(store.contains(2));
+        assertTrue(store.getByteCount() <= store.getBudget());
+
+        byte[] indices = new byte[FRAME_SIZE];
+        store.expand(0, indices);
+        assertArrayEquals(frames[0], indices);
+    }
+
+    @Test
+    public void expandsDecodedFrames() {
+        // frames stored the way GifImageDecoder does in lazy mode, as indices into the palette
+        GifDecoder decoder = new GifDecoder();
+        decoder.read(GifDecoderTest.ANIMATION);
+        GifPalette palette = new GifPalette(decoder.getGlobalColorTable());
+        int pixelCount = decoder.getWidth() * decoder.getHeight();
+        GifFrameStore store = new GifFrameStore(pixelCount, Integer.MAX_VALUE);
+        byte[] indices = new byte[pixelCount];
+        for (int i = 0; i < decoder.getFrameCount(); i++) {
+            assertTrue(palette.index(decoder.getFramePixels(i), indices));
+            assertTrue(store.put(i, indices));
+        }
+        int[] pixels = new int[pixelCount];
+        for (int i : new int[]{0, 1, 2, 3, 4, 3, 1, 4, 0}) {
+            store.expand(i, indices);
+            palette.expand(indices, pixels, pixelCount);
+            assertArrayEquals("frame " + i, GifDecoderTest.FRAMES[i], pixels);
+        }
+    }
+
+    private static GifFrameStore store(byte[][] frames) {
+        GifFrameStore store = new GifFrameStore(FRAME_SIZE, Integer.MAX_VALUE);
+        for (int i = 0; i < frames.length; i++) {
+            assertTrue(store.put(i, frames[i]));
+            assertTrue(store.contains(i));
+        }
+        return store;
+    }
+
+    /**
+     * Gets frames of a square moving over a still background, long enough for chains of
+     * frames stored as differences to be cut.
+     */
+    private static byte[][] animation(int frameCount) {
+        byte[] background = new byte[FRAME_SIZE];
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            background[i] = (byte) (i / 32 % 4 == 0 ? 7 : i % 5);
+        }
+        byte[][] frames = new byte[frameCount][];
+        for (int n = 0; n < frameCount; n++) {
+            byte[] frame = Arrays.copyOf(background, FRAME_SIZE);
+            int left = n % 24;
+            int top = n * 3 % 24;
+            for (int y = top; y < top + 8; y++) {
+                Arrays.fill(frame, y * 32 + left, y * 32 + left + 8, (byte) (200 + n % 3));
+            }
+            frames[n] = frame;
+        }
+        return frames;
+    }
+}
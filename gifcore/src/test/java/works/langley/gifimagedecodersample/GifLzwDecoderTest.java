@@ -0,0 +1,126 @@
+package works.langley.gifimagedecodersample;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GifLzwDecoderTest {
+    // image data of a block written by GifWriter starts after the image descriptor and the LZW minimum code size
+    private static final int DATA_OFFSET = 11;
+
+    private final GifLzwDecoder mDecoder = new GifLzwDecoder();
+
+    @Test
+    public void decodesRandomIndices() {
+        // enough codes to fill the table, the encoder then starts over with a clear code
+        byte[] indices = randomIndices(100 * 100, 256);
+        assertDecodes(indices, 8);
+    }
+
+    @Test
+    public void decodesRepeatedIndex() {
+        // each code refers to the string added just before it
+        byte[] indices = new byte[5000];
+        Arrays.fill(indices, (byte) 7);
+        assertDecodes(indices, 8);
+    }
+
+    @Test
+    public void decodesSmallCodeSizes() {
+        for (int minCodeSize = 2; minCodeSize < 8; minCodeSize++) {
+            assertDecodes(randomIndices(3000, 1 << minCodeSize), minCodeSize);
+        }
+    }
+
+    @Test
+    public void decodesDirectBuffers() {
+        byte[] indices = randomIndices(4000, 256);
+        byte[] block = GifWriter.imageBlock(0, 0, indices.length, 1, indices, false, 8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(block.length);
+        buffer.put(block);
+        byte[] pixels = new byte[indices.length];
+        assertEquals(indices.length, mDecoder.decode(buffer, DATA_OFFSET, 8, pixels, pixels.length));
+        assertArrayEquals(indices, pixels);
+    }
+
+    @Test
+    public void truncatedStreamKeepsPixelsDecoded() {
+        byte[] indices = randomIndices(4000, 256);
+        byte[] block = GifWriter.imageBlock(0, 0, indices.length, 1, indices, false, 8);
+        for (int length = DATA_OFFSET; length < block.length - 1; length += 97) {
+            byte[] truncated = Arrays.copyOf(block, length);
+            byte[] pixels = new byte[indices.length];
+            Arrays.fill(pixels, (byte) 0xFF);
+            int decoded = mDecoder.decode(truncated, DATA_OFFSET, 8, pixels, pixels.length);
+            assertTrue(decoded < indices.length);
+            assertArrayEquals(Arrays.copyOf(indices, decoded), Arrays.copyOf(pixels, decoded));
+            assertArrayEquals(new byte[indices.length - decoded], Arrays.copyOfRange(pixels, decoded, pixels.length));
+        }
+    }
+
+    @Test
+    public void truncatedDirectBufferKeepsPixelsDecoded() {
+        byte[] indices = randomIndices(4000, 256);
+        byte[] block = GifWriter.imageBlock(0, 0, indices.length, 1, indices, false, 8);
+        int length = block.length / 2;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(block, 0, length);
+        byte[] pixels = new byte[indices.length];
+        int decoded = mDecoder.decode(buffer, DATA_OFFSET, 8, pixels, pixels.length);
+        assertTrue(decoded > 0 && decoded < indices.length);
+        assertArrayEquals(Arrays.copyOf(indices, decoded), Arrays.copyOf(pixels, decoded));
+    }
+
+    @Test
+    public void missingPixelsAreSetToZero() {
+        // the image data ends before the frame does
+        byte[] indices = randomIndices(1000, 256);
+        byte[] block = GifWriter.imageBlock(0, 0, indices.length, 1, indices, false, 8);
+        byte[] pixels = new byte[2000];
+        Arrays.fill(pixels, (byte) 0xFF);
+        assertEquals(indices.length, mDecoder.decode(block, DATA_OFFSET, 8, pixels, pixels.length));
+        assertArrayEquals(indices, Arrays.copyOf(pixels, indices.length));
+        assertArrayEquals(new byte[1000], Arrays.copyOfRange(pixels, indices.length, pixels.length));
+    }
+
+    @Test
+    public void invalidCodeSizeDecodesNothing() {
+        byte[] indices = randomIndices(100, 256);
+        byte[] block = GifWriter.imageBlock(0, 0, indices.length, 1, indices, false, 8);
+        byte[] pixels = new byte[indices.length];
+        assertEquals(0, mDecoder.decode(block, DATA_OFFSET, 0, pixels, pixels.length));
+        assertEquals(0, mDecoder.decode(block, DATA_OFFSET, 12, pixels, pixels.length));
+        assertArrayEquals(new byte[indices.length], pixels);
+    }
+
+    @Test
+    public void decoderIsReusedBetweenFrames() {
+        byte[] first = randomIndices(3000, 256);
+        byte[] second = randomIndices(3000, 16);
+        assertDecodes(first, 8);
+        assertDecodes(second, 4);
+        assertDecodes(first, 8);
+    }
+
+    private void assertDecodes(byte[] indices, int minCodeSize) {
+        byte[] block = GifWriter.imageBlock(0, 0, indices.length, 1, indices, false, minCodeSize);
+        byte[] pixels = new byte[indices.length];
+        assertEquals(indices.length, mDecoder.decode(block, DATA_OFFSET, minCodeSize, pixels, pixels.length));
+        assertArrayEquals(indices, pixels);
+    }
+
+    static byte[] randomIndices(int length, int colors) {
+        Random random = new Random(length * 31 + colors);
+        byte[] indices = new byte[length];
+        for (int i = 0; i < length; i++) {
+            indices[i] = (byte) random.nextInt(colors);
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,89 @@
+package works.langley.gifimagedecodersample;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GifMetadataTest {
+    private static final int[] PALETTE = {0x000000, 0xFF0000, 0x00FF00, 0x0000FF};
+
+    @Test
+    public void readsLoopCount() throws IOException {
+        byte[] gif = animation(3);
+        assertEquals(3, GifMetadata.probe(gif).getLoopCount());
+        assertEquals(3, GifMetadata.probe(ByteBuffer.wrap(gif)).getLoopCount());
+        assertEquals(3, GifMetadata.probe(new ByteArrayInputStream(gif)).getLoopCount());
+    }
+
+    @Test
+    public void readsInfiniteLoop() {
+        assertEquals(GifMetadata.LOOP_FOREVER, GifMetadata.probe(animation(0)).getLoopCount());
+    }
+
+    @Test
+    public void filesWithoutLoopCountPlayOnce() {
+        byte[] gif = new GifWriter(2, 2, PALETTE)
+                .frame(0, 0, 2, 2, new byte[4], false)
+                .toByteArray();
+        GifMetadata metadata = GifMetadata.probe(gif);
+        assertEquals(GifParser.STATUS_OK, metadata.getStatus());
+        assertEquals(GifMetadata.LOOP_NONE, metadata.getLoopCount());
+        assertEquals(1, metadata.getFrameCount());
+    }
+
+    @Test
+    public void readsFramesAndDelays() throws IOException {
+        byte[] gif = animation(0);
+        for (GifMetadata metadata : new GifMetadata[]{GifMetadata.probe(gif),
+                GifMetadata.probe(new ByteArrayInputStream(gif))}) {
+            assertEquals(GifParser.STATUS_OK, metadata.getStatus());
+            assertEquals("89a", metadata.getVersion());
+            assertEquals(4, metadata.getWidth());
+            assertEquals(3, metadata.getHeight());
+            assertEquals(3, metadata.getFrameCount());
+            // delays under 20 ms are played at 100 ms
+            assertEquals(250, metadata.getDelay(0));
+            assertEquals(100, metadata.getDelay(1));
+            assertEquals(100, metadata.getDelay(2));
+            assertEquals(-1, metadata.getDelay(3));
+            assertEquals(450, metadata.getDuration());
+            assertTrue(metadata.isInterlaced());
+            assertTrue(metadata.hasTransparency());
+        }
+    }
+
+    @Test
+    public void truncatedFilesKeepFramesRead() throws IOException {
+        byte[] gif = animation(0);
+        // cut in the image data of the last frame
+        byte[] truncated = Arrays.copyOf(gif, gif.length - 4);
+        for (GifMetadata metadata : new GifMetadata[]{GifMetadata.probe(truncated),
+                GifMetadata.probe(new ByteArrayInputStream(truncated))}) {
+            assertEquals(GifParser.STATUS_FORMAT_ERROR, metadata.getStatus());
+            assertEquals(2, metadata.getFrameCount());
+        }
+        assertEquals(0, GifMetadata.probe(Arrays.copyOf(gif, 6)).getFrameCount());
+        assertEquals(0, GifMetadata.probe(new ByteArrayInputStream(Arrays.copyOf(gif, 6))).getFrameCount());
+    }
+
+    /**
+     * Gets a file of 3 frames, delays 250 ms, 10 ms and 0, the second one interlaced with a transparent color.
+     */
+    private static byte[] animation(int loopCount) {
+        return new GifWriter(4, 3, PALETTE)
+                .loop(loopCount)
+                .control(25, GifCompositor.DISPOSE_NONE, -1)
+                .frame(0, 0, 4, 3, new byte[12], false)
+                .control(1, GifCompositor.DISPOSE_BACKGROUND, 0)
+                .frame(1, 1, 2, 2, new byte[]{1, 0, 0, 2}, true)
+                .control(0, GifCompositor.DISPOSE_NONE, -1)
+                .frame(0, 0, 1, 1, new byte[]{3}, false)
+                .toByteArray();
+    }
+}
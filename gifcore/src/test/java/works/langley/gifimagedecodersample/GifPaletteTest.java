@@ -0,0 +1,57 @@
+package works.langley.gifimagedecodersample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GifPaletteTest {
+    @Test
+    public void indexesCompositedFrames() {
+        GifDecoder decoder = new GifDecoder();
+        decoder.read(GifDecoderTest.ANIMATION);
+        GifPalette palette = new GifPalette(decoder.getGlobalColorTable());
+        // the 4 colors of the color table plus transparent
+        assertEquals(5, palette.size());
+
+        int pixelCount = decoder.getWidth() * decoder.getHeight();
+        byte[] indices = new byte[pixelCount];
+        int[] pixels = new int[pixelCount];
+        short[] rgb565 = new short[pixelCount];
+        short[] expected565 = new short[pixelCount];
+        for (int i = 0; i < decoder.getFrameCount(); i++) {
+            int[] frame = decoder.getFramePixels(i);
+            assertTrue("frame " + i, palette.index(frame, indices));
+            palette.expand(indices, pixels, pixelCount);
+            assertArrayEquals("frame " + i, GifDecoderTest.FRAMES[i], pixels);
+            palette.expand(indices, rgb565, pixelCount);
+            GifCompositor.packRgb565(frame, expected565, pixelCount);
+            assertArrayEquals("frame " + i, expected565, rgb565);
+        }
+    }
+
+    @Test
+    public void colorsMissingFromPaletteAreNotIndexed() {
+        GifPalette palette = new GifPalette(new int[]{0xFF000000, 0xFFFF0000});
+        assertEquals(1, palette.indexOf(0xFFFF0000));
+        assertEquals(2, palette.indexOf(0));
+        assertEquals(-1, palette.indexOf(0xFF00FF00));
+        assertFalse(palette.index(new int[]{0xFF000000, 0, 0xFF00FF00}, new byte[3]));
+    }
+
+    @Test
+    public void fullColorTablesLeaveNoRoomForTransparent() {
+        int[] colorTable = new int[256];
+        for (int i = 0; i < colorTable.length; i++) {
+            colorTable[i] = 0xFF000000 | i * 0x010203;
+        }
+        GifPalette palette = new GifPalette(colorTable);
+        assertEquals(256, palette.size());
+        for (int i = 0; i < colorTable.length; i++) {
+            assertEquals(i, palette.indexOf(colorTable[i]));
+        }
+        assertEquals(-1, palette.indexOf(0));
+    }
+}
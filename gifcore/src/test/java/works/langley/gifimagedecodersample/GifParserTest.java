@@ -0,0 +1,105 @@
+package works.langley.gifimagedecodersample;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class GifParserTest {
+    @Test
+    public void parsesBothSourcesAlike() throws IOException {
+        CountingListener fromBuffer = new CountingListener();
+        CountingListener fromStream = new CountingListener();
+        assertEquals(GifParser.STATUS_OK, new GifParser().parse(ByteBuffer.wrap(GifDecoderTest.ANIMATION), fromBuffer));
+        assertEquals(GifParser.STATUS_OK, new GifParser().parse(new ByteArrayInputStream(GifDecoderTest.ANIMATION), fromStream));
+        assertEquals(5, fromBuffer.imageBlocks);
+        assertEquals(5, fromBuffer.gcExts);
+        assertEquals(1, fromBuffer.appExts);
+        assertEquals(fromBuffer.toString(), fromStream.toString());
+    }
+
+    @Test
+    public void unknownBlocksAreFormatErrors() throws IOException {
+        // an unknown block in place of the trailer, after the frames
+        byte[] gif = Arrays.copyOf(GifDecoderTest.ANIMATION, GifDecoderTest.ANIMATION.length);
+        gif[gif.length - 1] = 0x42;
+        assertParsesFrames(gif, 5);
+        // an unknown extension in place of the trailer
+        gif = Arrays.copyOf(gif, gif.length + 2);
+        gif[gif.length - 3] = 0x21;
+        gif[gif.length - 2] = 0x42;
+        assertParsesFrames(gif, 5);
+    }
+
+    @Test
+    public void truncatedFilesAreFormatErrors() throws IOException {
+        byte[] gif = GifDecoderTest.ANIMATION;
+        // without the trailer, and in the middle of the last frame
+        assertParsesFrames(Arrays.copyOf(gif, gif.length - 1), 5);
+        assertParsesFrames(Arrays.copyOf(gif, gif.length - 4), 4);
+        assertParsesFrames(Arrays.copyOf(gif, 10), 0);
+    }
+
+    @Test
+    public void listenerErrorsAreNotFormatErrors() {
+        CountingListener listener = new CountingListener() {
+            @Override
+            public void onImageBlock(ImageBlock imageBlock) {
+                throw new IndexOutOfBoundsException();
+            }
+        };
+        try {
+            new GifParser().parse(ByteBuffer.wrap(GifDecoderTest.ANIMATION), listener);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    private static void assertParsesFrames(byte[] gif, int frameCount) throws IOException {
+        CountingListener fromBuffer = new CountingListener();
+        CountingListener fromStream = new CountingListener();
+        assertEquals(GifParser.STATUS_FORMAT_ERROR, new GifParser().parse(ByteBuffer.wrap(gif), fromBuffer));
+        assertEquals(GifParser.STATUS_FORMAT_ERROR, new GifParser().parse(new ByteArrayInputStream(gif), fromStream));
+        assertEquals(frameCount, fromBuffer.imageBlocks);
+        assertEquals(frameCount, fromStream.imageBlocks);
+    }
+
+    private static class CountingListener implements GifParser.Listener {
+        int imageBlocks;
+        int gcExts;
+        int appExts;
+        int loopCount = -1;
+
+        @Override
+        public boolean onHeader(GifHeader header) {
+            return true;
+        }
+
+        @Override
+        public void onGraphicControlExtension(GraphicControlExtension gcExt) {
+            gcExts++;
+        }
+
+        @Override
+        public void onApplicationExtension(ApplicationExtension appExt) {
+            appExts++;
+            loopCount = appExt.getLoopCount();
+        }
+
+        @Override
+        public void onImageBlock(ImageBlock imageBlock) {
+            imageBlocks++;
+        }
+
+        @Override
+        public String toString() {
+            return imageBlocks + " " + gcExts + " " + appExts + " " + loopCount;
+        }
+    }
+}
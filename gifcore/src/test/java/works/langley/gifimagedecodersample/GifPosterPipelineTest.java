@@ -0,0 +1,75 @@
+package works.langley.gifimagedecodersample;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GifPosterPipelineTest {
+    @Test
+    public void decodesChosenFrameOfEveryGif() throws InterruptedException {
+        byte[] shortGif = new GifWriter(4, 3, new int[]{0xFFFFFF, 0x000000})
+                .frame(0, 0, 4, 3, new byte[12], false)
+                .toByteArray();
+        List<GifPosterPipeline.Source> sources = new ArrayList<GifPosterPipeline.Source>();
+        for (int i = 0; i < 20; i++) {
+            sources.add(GifPosterPipeline.fromBytes(i % 3 == 0 ? shortGif : GifDecoderTest.ANIMATION));
+        }
+        GifPosterPipeline pipeline = new GifPosterPipeline(3);
+        pipeline.setFrameIndex(3);
+        List<GifPosterPipeline.Result> results = pipeline.run(sources);
+        assertEquals(sources.size(), results.size());
+        int[] white = new int[12];
+        Arrays.fill(white, 0xFFFFFFFF);
+        for (int i = 0; i < results.size(); i++) {
+            GifPosterPipeline.Result result = results.get(i);
+            assertEquals(i, result.position);
+            assertTrue(result.isSuccessful());
+            assertEquals(GifDecoder.STATUS_OK, result.status);
+            if (i % 3 == 0) {
+                // clamped to the last frame
+                assertEquals(0, result.frameIndex);
+                assertArrayEquals(white, result.pixels);
+            } else {
+                assertEquals(3, result.frameIndex);
+                assertArrayEquals(GifDecoderTest.FRAMES[3], result.pixels);
+            }
+        }
+    }
+
+    @Test
+    public void failuresAreReportedPerGif() {
+        GifPosterPipeline pipeline = new GifPosterPipeline(1);
+
+        GifPosterPipeline.Result missing = pipeline.decode(GifPosterPipeline.fromFile("/nonexistent.gif"));
+        assertFalse(missing.isSuccessful());
+        assertEquals(GifDecoder.STATUS_OPEN_ERROR, missing.status);
+        assertTrue(missing.error instanceof FileNotFoundException);
+
+        GifPosterPipeline.Result garbage = pipeline.decode(GifPosterPipeline.fromBytes(new byte[]{'G', 'I', 'F', 1, 2}));
+        assertFalse(garbage.isSuccessful());
+        assertEquals(GifDecoder.STATUS_FORMAT_ERROR, garbage.status);
+        assertNull(garbage.error);
+
+        // the image data is gone once read, only the last frame is left on the canvas
+        GifPosterPipeline.Result dropped = pipeline.decode(new GifPosterPipeline.Source() {
+            @Override
+            public int read(GifDecoder decoder) throws IOException {
+                decoder.setDecodeWhileReading(true);
+                return decoder.read(new ByteArrayInputStream(GifDecoderTest.ANIMATION));
+            }
+        });
+        assertFalse(dropped.isSuccessful());
+        assertEquals(GifDecoder.STATUS_FORMAT_ERROR, dropped.status);
+    }
+}
@@ -0,0 +1,222 @@
+package works.langley.gifimagedecodersample;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/**
+ * Writes small GIF files for the tests: a global color table, an optional loop count
+ * and frames of color indices, LZW compressed.
+ */
+class GifWriter {
+    private static final int MAX_CODE_SIZE = 12;
+    private static final int MAX_CODES = 1 << MAX_CODE_SIZE;
+
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+
+    /**
+     * @param width   width of the logical screen
+     * @param height  height of the logical screen
+     * @param palette RGB colors of the global color table, 2 to 256 long, a power of 2
+     */
+    public GifWriter(int width, int height, int[] palette) {
+        writeString("GIF89a");
+        writeShort(width);
+        writeShort(height);
+        mOut.write(0x80 | getSizeField(palette.length));
+        mOut.write(0); // background color index
+        mOut.write(0); // pixel aspect ratio
+        for (int color : palette) {
+            mOut.write(color >> 16);
+            mOut.write(color >> 8);
+            mOut.write(color);
+        }
+    }
+
+    /**
+     * Writes a NETSCAPE2.0 extension.
+     *
+     * @param loopCount number of times the animation is repeated, 0 to repeat forever
+     */
+    public GifWriter loop(int loopCount) {
+        mOut.write(0x21);
+        mOut.write(0xFF);
+        mOut.write(11);
+        writeString("NETSCAPE2.0");
+        mOut.write(3);
+        mOut.write(1);
+        writeShort(loopCount);
+        mOut.write(0);
+        return this;
+    }
+
+    /**
+     * Writes a graphic control extension, for the next frame.
+     *
+     * @param delay            delay in hundredths of a second
+     * @param dispose          disposal method
+     * @param transparentIndex index of the transparent color, or -1
+     */
+    public GifWriter control(int delay, int dispose, int transparentIndex) {
+        mOut.write(0x21);
+        mOut.write(0xF9);
+        mOut.write(4);
+        mOut.write(dispose << 2 | (transparentIndex >= 0 ? 1 : 0));
+        writeShort(delay);
+        mOut.write(Math.max(0, transparentIndex));
+        mOut.write(0);
+        return this;
+    }
+
+    /**
+     * Writes a frame using the global color table.
+     *
+     * @param indices color indices, row by row from the top, width * height long
+     */
+    public GifWriter frame(int left, int top, int width, int height, byte[] indices, boolean interlaced) {
+        byte[] block = imageBlock(left, top, width, height, indices, interlaced, 8);
+        mOut.write(block, 0, block.length);
+        return this;
+    }
+
+    /**
+     * Writes the trailer and gets the file.
+     */
+    public byte[] toByteArray() {
+        mOut.write(0x3B);
+        return mOut.toByteArray();
+    }
+
+    /**
+     * Gets an image block: image descriptor and image data.
+     *
+     * @param indices     color indices, row by row from the top, width * height long;
+     *                    stored in interlaced order if interlaced is true
+     * @param minCodeSize LZW minimum code size
+     */
+    public static byte[] imageBlock(int left, int top, int width, int height, byte[] indices, boolean interlaced,
+                                    int minCodeSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x2C);
+        writeShort(out, left);
+        writeShort(out, top);
+        writeShort(out, width);
+        writeShort(out, height);
+        out.write(interlaced ? 0x40 : 0);
+        out.write(minCodeSize);
+        byte[] data = encode(interlaced ? interlace(indices, width, height) : indices, minCodeSize);
+        for (int position = 0; position < data.length; position += 255) {
+            int length = Math.min(255, data.length - position);
+            out.write(length);
+            out.write(data, position, length);
+        }
+        out.write(0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reorders rows into the order interlaced frames store them: rows 0, 8, 16...,
+     * then 4, 12..., then 2, 6..., then 1, 3...
+     */
+    public static byte[] interlace(byte[] indices, int width, int height) {
+        byte[] interlaced = new byte[indices.length];
+        int row = 0;
+        int[] starts = {0, 4, 2, 1};
+        int[] increments = {8, 8, 4, 2};
+        for (int pass = 0; pass < starts.length; pass++) {
+            for (int y = starts[pass]; y < height; y += increments[pass]) {
+                System.arraycopy(indices, y * width, interlaced, row++ * width, width);
+            }
+        }
+        return interlaced;
+    }
+
+    /**
+     * LZW compresses color indices, without sub-blocks.
+     *
+     * @param indices     color indices, each under 2^minCodeSize
+     * @param minCodeSize LZW minimum code size
+     */
+    public static byte[] encode(byte[] indices, int minCodeSize) {
+        BitWriter out = new BitWriter();
+        int clear = 1 << minCodeSize;
+        int codeSize = minCodeSize + 1;
+        int next = clear + 2;
+        HashMap<Integer, Integer> table = new HashMap<Integer, Integer>();
+        out.write(clear, codeSize);
+        if (indices.length > 0) {
+            int prefix = indices[0] & 0xFF;
+            for (int i = 1; i < indices.length; i++) {
+                int index = indices[i] & 0xFF;
+                Integer code = table.get(prefix << 8 | index);
+                if (code != null) {
+                    prefix = code;
+                    continue;
+                }
+                out.write(prefix, codeSize);
+                if (next < MAX_CODES) {
+                    table.put(prefix << 8 | index, next++);
+                    if (next > 1 << codeSize && codeSize < MAX_CODE_SIZE) {
+                        codeSize++;
+                    }
+                } else {
+                    out.write(clear, codeSize);
+                    table.clear();
+                    codeSize = minCodeSize + 1;
+                    next = clear + 2;
+                }
+                prefix = index;
+            }
+            out.write(prefix, codeSize);
+        }
+        out.write(clear + 1, codeSize);
+        return out.toByteArray();
+    }
+
+    private static int getSizeField(int length) {
+        int sizeField = 0;
+        while (2 << sizeField < length) {
+            sizeField++;
+        }
+        return sizeField;
+    }
+
+    private void writeString(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            mOut.write(s.charAt(i));
+        }
+    }
+
+    private void writeShort(int value) {
+        writeShort(mOut, value);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write(value >> 8 & 0xFF);
+    }
+
+    private static class BitWriter {
+        private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+        private int mDatum;
+        private int mBits;
+
+        void write(int code, int codeSize) {
+            mDatum |= code << mBits;
+            mBits += codeSize;
+            while (mBits >= 8) {
+                mOut.write(mDatum & 0xFF);
+                mDatum >>= 8;
+                mBits -= 8;
+            }
+        }
+
+        byte[] toByteArray() {
+            if (mBits > 0) {
+                mOut.write(mDatum & 0xFF);
+                mDatum = 0;
+                mBits = 0;
+            }
+            return mOut.toByteArray();
+        }
+    }
+}